@@ -0,0 +1,187 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.util.FastColor;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs shared by all benchmarks, ores are either upscaled stock textures from the test resources or synthetic.
+ */
+final class BenchmarkInputs
+{
+    /** Name of the synthetic ore, all other names refer to a stock texture of the test resources. */
+    static final String SYNTHETIC = "synthetic";
+    private static final String TEXTURE_PATH = "/assets/minecraft/textures/block/";
+    private static final int STOCK_SIZE = 16;
+    private static final long SEED = 0x4F726554657847L;
+
+    /**
+     * Returns a vertical strip of {@code frames} ore frames, stock ores are shifted by one texel per frame such that
+     * frame deduplication doesn't skip the measured work.
+     */
+    static NativeImage ore(String name, int resolution, int frames)
+    {
+        if (name.equals(SYNTHETIC))
+        {
+            return syntheticOre(resolution, frames);
+        }
+
+        NativeImage source = readTexture(name);
+        try
+        {
+            int sourceFrames = Math.max(1, source.getHeight() / STOCK_SIZE);
+            NativeImage strip = new NativeImage(NativeImage.Format.RGBA, STOCK_SIZE, STOCK_SIZE * frames, true);
+            for (int frame = 0; frame < frames; frame++)
+            {
+                int srcY = (frame % sourceFrames) * STOCK_SIZE;
+                for (int y = 0; y < STOCK_SIZE; y++)
+                {
+                    for (int x = 0; x < STOCK_SIZE; x++)
+                    {
+                        int color = source.getPixelRGBA(x, srcY + y);
+                        strip.setPixelRGBA((x + frame) % STOCK_SIZE, frame * STOCK_SIZE + y, color);
+                    }
+                }
+            }
+
+            if (resolution == STOCK_SIZE)
+            {
+                return strip;
+            }
+            return Utils.scaleImage(strip, resolution / STOCK_SIZE);
+        }
+        finally
+        {
+            source.close();
+        }
+    }
+
+    /**
+     * Returns a stone-like background with noise on every pixel.
+     */
+    static NativeImage background(int resolution)
+    {
+        return background(resolution, SEED);
+    }
+
+    static NativeImage background(int resolution, long seed)
+    {
+        Random random = new Random(seed);
+        NativeImage image = new NativeImage(NativeImage.Format.RGBA, resolution, resolution, true);
+        for (int y = 0; y < resolution; y++)
+        {
+            for (int x = 0; x < resolution; x++)
+            {
+                int gray = 100 + random.nextInt(48);
+                int tint = random.nextInt(6);
+                image.setPixelRGBA(x, y, FastColor.ABGR32.color(255, gray - tint, gray, gray + tint));
+            }
+        }
+        return image;
+    }
+
+    static AnimationMetadataSection animation(int resolution)
+    {
+        return new AnimationMetadataSection(List.of(), resolution, resolution, 1, false);
+    }
+
+    static FrameSize frameSize(int resolution)
+    {
+        return new FrameSize(resolution, resolution);
+    }
+
+    static FrameInfo firstFrame()
+    {
+        return new FrameInfo(0, 0, 0);
+    }
+
+    static ShadowMetadata shadow(String setting)
+    {
+        return switch (setting)
+        {
+            case "none" -> null;
+            case "default" -> ShadowMetadata.DEFAULT;
+            case "strong" -> new ShadowMetadata(250, 128, 128, 0.5F, 1, 1F);
+            case "wide" -> new ShadowMetadata(125, 72, 72, 1F, 8, 1F);
+            default -> throw new IllegalArgumentException("Unknown shadow setting: " + setting);
+        };
+    }
+
+    static NativeImage copy(NativeImage image)
+    {
+        NativeImage copy = new NativeImage(image.format(), image.getWidth(), image.getHeight(), false);
+        PixelView.copyRect(PixelView.of(image), 0, 0, PixelView.of(copy), 0, 0, image.getWidth(), image.getHeight());
+        return copy;
+    }
+
+    private static NativeImage syntheticOre(int resolution, int frames)
+    {
+        return syntheticOre(resolution, frames, SEED);
+    }
+
+    static NativeImage syntheticOre(int resolution, int frames, long seed)
+    {
+        Random random = new Random(seed);
+        NativeImage image = new NativeImage(NativeImage.Format.RGBA, resolution, resolution * frames, true);
+        int clusters = Math.max(3, resolution / 8);
+        for (int frame = 0; frame < frames; frame++)
+        {
+            int offsetY = frame * resolution;
+            for (int i = 0; i < clusters; i++)
+            {
+                int cx = random.nextInt(resolution);
+                int cy = random.nextInt(resolution);
+                int radius = 1 + random.nextInt(Math.max(1, resolution / 12));
+                int red = 64 + random.nextInt(192);
+                int green = 32 + random.nextInt(192);
+                int blue = 32 + random.nextInt(192);
+                for (int y = Math.max(0, cy - radius); y < Math.min(resolution, cy + radius + 1); y++)
+                {
+                    for (int x = Math.max(0, cx - radius); x < Math.min(resolution, cx + radius + 1); x++)
+                    {
+                        int dx = x - cx;
+                        int dy = y - cy;
+                        if (dx * dx + dy * dy <= radius * radius)
+                        {
+                            int shade = random.nextInt(24);
+                            int color = FastColor.ABGR32.color(255, blue - shade, green - shade, red - shade);
+                            image.setPixelRGBA(x, offsetY + y, color);
+                        }
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    private static NativeImage readTexture(String name)
+    {
+        try (InputStream stream = BenchmarkInputs.class.getResourceAsStream(TEXTURE_PATH + name + ".png"))
+        {
+            if (stream == null)
+            {
+                throw new IllegalArgumentException("Unknown test texture: " + name);
+            }
+            return NativeImage.read(stream);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+
+    private BenchmarkInputs() { }
+}
@@ -0,0 +1,69 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.openjdk.jmh.annotations.*;
+import xfacthd.oretexgen.client.util.PixelView;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures blending a single ore frame onto its background with the per-pixel {@link Utils#copyRect} and the row-based
+ * {@link Utils#blendRect}, the latter with the scalar and the vector kernels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlendBenchmark
+{
+    @Param({ "16", "32", "64", "128", "512" })
+    public int resolution;
+    @Param({ "coal_ore", "copper_ore", "synthetic" })
+    public String ore;
+
+    private NativeImage foreground;
+    private NativeImage output;
+    private PixelView foregroundView;
+    private PixelView outputView;
+
+    @Setup
+    public void setup()
+    {
+        foreground = BenchmarkInputs.ore(ore, resolution, 1);
+        output = BenchmarkInputs.background(resolution);
+        foregroundView = PixelView.of(foreground);
+        outputView = PixelView.of(output);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        foreground.close();
+        output.close();
+    }
+
+    @Benchmark
+    public NativeImage copyRect()
+    {
+        Utils.copyRect(foreground, output, 0, 0, 0, 0, resolution, resolution);
+        return output;
+    }
+
+    @Benchmark
+    public NativeImage blendRect()
+    {
+        Utils.blendRect(foregroundView, outputView, 0, 0, 0, 0, resolution, resolution);
+        return output;
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Doretexgen.vector_kernels=true" })
+    public NativeImage blendRectVector()
+    {
+        Utils.blendRect(foregroundView, outputView, 0, 0, 0, 0, resolution, resolution);
+        return output;
+    }
+}
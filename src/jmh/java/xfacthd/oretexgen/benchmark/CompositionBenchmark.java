@@ -0,0 +1,72 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.resources.ResourceLocation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xfacthd.oretexgen.client.generator.OreCompositor;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.shadow.Palette;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the full composition of an ore texture as done by the sprite supplier after decoding and scaling. The
+ * palette is built once per trial since it is cached per background in the game.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompositionBenchmark
+{
+    private static final ResourceLocation NAME = new ResourceLocation("oretexgen", "benchmark");
+
+    @Param({ "16", "32", "64", "128", "512" })
+    public int resolution;
+    @Param({ "coal_ore", "copper_ore", "diamond_ore", "redstone_ore", "synthetic" })
+    public String ore;
+    @Param({ "1", "4" })
+    public int frames;
+    @Param({ "none", "default", "strong" })
+    public String shadow;
+
+    private NativeImage image;
+    private NativeImage background;
+    private Palette palette;
+    private ShadowMetadata shadowMetadata;
+    private FrameSize size;
+    private AnimationMetadataSection animation;
+
+    @Setup
+    public void setup()
+    {
+        image = BenchmarkInputs.ore(ore, resolution, frames);
+        background = BenchmarkInputs.background(resolution);
+        shadowMetadata = BenchmarkInputs.shadow(shadow);
+        palette = shadowMetadata != null ? new Palette(background, shadowMetadata.paletteExpansion()) : null;
+        size = BenchmarkInputs.frameSize(resolution);
+        animation = BenchmarkInputs.animation(resolution);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        image.close();
+        background.close();
+    }
+
+    @Benchmark
+    public void buildCombinedTexture(Blackhole blackhole)
+    {
+        NativeImage result = OreCompositor.buildCombinedTexture(
+                NAME, size, image, background, palette, shadowMetadata, animation
+        );
+        blackhole.consume(result);
+        result.close();
+    }
+}
@@ -0,0 +1,460 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.renderer.texture.MissingTextureAtlasSprite;
+import net.minecraft.client.renderer.texture.SpriteContents;
+import net.minecraft.client.renderer.texture.atlas.SpriteSource;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.OTGConfig;
+import xfacthd.oretexgen.client.bake.OreTextureBaker;
+import xfacthd.oretexgen.client.loader.OreMatrixSource;
+import xfacthd.oretexgen.client.loader.OreTextureSource;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.metrics.GenerationReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+/**
+ * Runs the complete generation path against in-memory resources without starting the game and logs the throughput
+ * per configuration. Golden images are stored as {@code <golden>/<configuration>/<namespace>/<path>.png}, upscaled
+ * ores use separate golden images with {@link OTGConfig#NATIVE_RESOLUTION_SHADOWS}.
+ * <p>
+ * Usage: {@code EndToEndHarness --resources <dir> [--golden <dir>] [--ores <n>] [--resolutions <n,n...>]
+ * [--iterations <n>] [--threads <n>] [--update-golden]}
+ */
+public final class EndToEndHarness
+{
+    private static final String USAGE = "Usage: EndToEndHarness --resources <dir> [--golden <dir>] [--ores <n>] [--resolutions <n,n...>] [--iterations <n>] [--threads <n>] [--update-golden]";
+    private static final String NAMESPACE = "oretexgen_bench";
+    private static final List<String> STAND_IN_BACKGROUNDS = List.of(
+            "stone", "blackstone", "granite", "deepslate", "tuff", "netherrack"
+    );
+    private static final int STOCK_SIZE = 16;
+    private static final int ANIMATED_INTERVAL = 4;
+    private static final int ANIMATED_FRAMES = 4;
+    private static final int MAX_REPORTED_MISMATCHES = 10;
+
+    public static void main(String[] args)
+    {
+        Options options;
+        try
+        {
+            options = Options.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            OreTextureGenerator.LOGGER.error(e.getMessage());
+            OreTextureGenerator.LOGGER.error(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Must happen before the config is loaded by the first generator, every pass has to actually generate
+        System.setProperty("oretexgen.disk_cache", "false");
+        System.setProperty("oretexgen.retained.max_size", "0");
+
+        try
+        {
+            List<Configuration> configurations = new ArrayList<>();
+            configurations.add(testResources(options.resources()));
+            for (int resolution : options.resolutions())
+            {
+                configurations.add(synthetic(resolution, resolution, options.ores()));
+            }
+            // The smallest resolution against every other one covers upscaled ores as well as upscaled backgrounds
+            int smallest = Collections.min(options.resolutions());
+            for (int resolution : new TreeSet<>(options.resolutions()))
+            {
+                if (resolution != smallest)
+                {
+                    configurations.add(synthetic(smallest, resolution, options.ores()));
+                    configurations.add(synthetic(resolution, smallest, options.ores()));
+                }
+            }
+
+            int failures = 0;
+            ForkJoinPool pool = new ForkJoinPool(options.threads());
+            try
+            {
+                for (Configuration configuration : configurations)
+                {
+                    failures += run(configuration, options, pool);
+                }
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+
+            if (failures > 0)
+            {
+                OreTextureGenerator.LOGGER.error("{} sprites failed verification", failures);
+            }
+            System.exit(failures > 0 ? 1 : 0);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.error("End-to-end generation failed", e);
+            System.exit(1);
+        }
+    }
+
+    private static int run(Configuration configuration, Options options, ForkJoinPool pool) throws IOException
+    {
+        Path goldenDir = options.golden() != null ? options.golden().resolve(configuration.goldenName()) : null;
+        int failures = 0;
+        double bestRate = 0D;
+        double rateSum = 0D;
+        long peakNative = 0L;
+        int sprites = 0;
+        for (int iteration = 0; iteration < options.iterations(); iteration++)
+        {
+            boolean verify = iteration == 0 && goldenDir != null;
+            InMemoryResourceManager manager = configuration.resources().copy();
+            Map<ResourceLocation, SpriteSource.SpriteSupplier> suppliers = new LinkedHashMap<>();
+            SpriteSource.Output output = new CollectingOutput(suppliers);
+
+            long start = System.nanoTime();
+            configuration.sources().forEach(source -> source.run(manager, output));
+            GenerationReport report = GenerationReport.of(output);
+
+            List<ForkJoinTask<SpriteContents>> tasks = new ArrayList<>(suppliers.size());
+            suppliers.values().forEach(supplier -> tasks.add(pool.submit(supplier::get)));
+            List<SpriteContents> results = new ArrayList<>(tasks.size());
+            tasks.forEach(task -> results.add(task.join()));
+            long time = System.nanoTime() - start;
+
+            try
+            {
+                if (verify)
+                {
+                    Iterator<ResourceLocation> ids = suppliers.keySet().iterator();
+                    for (SpriteContents contents : results)
+                    {
+                        if (!verify(ids.next(), contents, goldenDir, options.updateGolden()))
+                        {
+                            failures++;
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                results.forEach(SpriteContents::close);
+            }
+
+            double rate = results.size() / (time / 1_000_000_000D);
+            bestRate = Math.max(bestRate, rate);
+            rateSum += rate;
+            peakNative = Math.max(peakNative, report.getPeakNativeMemory());
+            sprites = results.size();
+        }
+
+        OreTextureGenerator.LOGGER.info(String.format(
+                Locale.ROOT,
+                "%-20s %5d sprites  %10.1f sprites/s (best %10.1f)  peak native memory %8d KiB  %d failed",
+                configuration.name(),
+                sprites,
+                rateSum / options.iterations(),
+                bestRate,
+                peakNative / 1024,
+                failures
+        ));
+        return failures;
+    }
+
+    private static boolean verify(ResourceLocation id, SpriteContents contents, Path goldenDir, boolean updateGolden) throws IOException
+    {
+        if (contents.name().equals(MissingTextureAtlasSprite.getLocation()))
+        {
+            OreTextureGenerator.LOGGER.error("{}: generation failed", id);
+            return false;
+        }
+
+        NativeImage actual = contents.getOriginalImage();
+        Path file = goldenDir.resolve(id.getNamespace()).resolve(id.getPath() + ".png");
+        if (!Files.exists(file))
+        {
+            if (updateGolden)
+            {
+                Files.createDirectories(file.getParent());
+                actual.writeToFile(file);
+                return true;
+            }
+            OreTextureGenerator.LOGGER.error("{}: missing golden image '{}'", id, file);
+            return false;
+        }
+
+        try (InputStream stream = Files.newInputStream(file); NativeImage expected = NativeImage.read(stream))
+        {
+            if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight())
+            {
+                OreTextureGenerator.LOGGER.error(
+                        "{}: size {}x{} differs from golden image size {}x{}",
+                        id, actual.getWidth(), actual.getHeight(), expected.getWidth(), expected.getHeight()
+                );
+                return false;
+            }
+
+            int mismatches = 0;
+            for (int y = 0; y < actual.getHeight(); y++)
+            {
+                for (int x = 0; x < actual.getWidth(); x++)
+                {
+                    int expectedColor = expected.getPixelRGBA(x, y);
+                    int actualColor = actual.getPixelRGBA(x, y);
+                    if (expectedColor != actualColor)
+                    {
+                        if (mismatches < MAX_REPORTED_MISMATCHES)
+                        {
+                            OreTextureGenerator.LOGGER.error(
+                                    "{}: pixel ({}, {}) is {}, expected {}",
+                                    id, x, y, String.format("%08X", actualColor), String.format("%08X", expectedColor)
+                            );
+                        }
+                        mismatches++;
+                    }
+                }
+            }
+            if (mismatches > 0)
+            {
+                OreTextureGenerator.LOGGER.error("{}: {} pixels differ from golden image", id, mismatches);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Sources of the test atlas definition on the test textures, with synthetic stand-ins for the missing backgrounds.
+     */
+    private static Configuration testResources(Path resources) throws IOException
+    {
+        Path assets = resources.resolve("assets");
+        InMemoryResourceManager manager = new InMemoryResourceManager("test_resources");
+        manager.addAssets(assets);
+
+        long seed = 0L;
+        for (String name : STAND_IN_BACKGROUNDS)
+        {
+            ResourceLocation path = new ResourceLocation("minecraft", "textures/block/" + name + ".png");
+            if (!manager.contains(path))
+            {
+                manager.add(path, encode(BenchmarkInputs.background(STOCK_SIZE, seed)));
+            }
+            seed++;
+        }
+
+        List<SpriteSource> sources = OreTextureBaker.readSources(assets.resolve("minecraft/atlases/blocks.json"));
+        return new Configuration("test_resources", manager, sources, false);
+    }
+
+    /**
+     * Ore matrix of the given amount of generated ores on a plain and a shadowed background of the given resolutions.
+     * With at least two animated ores, a static and an animated ore additionally get layers of the other ores.
+     */
+    private static Configuration synthetic(int oreResolution, int bgResolution, int oreCount) throws IOException
+    {
+        String name = "synthetic_" + oreResolution;
+        if (oreResolution != bgResolution)
+        {
+            name += "_on_" + bgResolution;
+        }
+
+        InMemoryResourceManager manager = new InMemoryResourceManager(name);
+        List<ResourceLocation> ores = new ArrayList<>(oreCount);
+        for (int i = 0; i < oreCount; i++)
+        {
+            String oreName = "ore_" + i;
+            boolean animated = i % ANIMATED_INTERVAL == ANIMATED_INTERVAL - 1;
+            ResourceLocation path = new ResourceLocation(NAMESPACE, "textures/block/" + oreName + ".png");
+            manager.add(path, encode(BenchmarkInputs.syntheticOre(oreResolution, animated ? ANIMATED_FRAMES : 1, i)));
+            if (animated)
+            {
+                ResourceLocation metaPath = new ResourceLocation(NAMESPACE, path.getPath() + ".mcmeta");
+                manager.add(metaPath, "{\"animation\":{\"frametime\":2}}".getBytes(StandardCharsets.UTF_8));
+            }
+            ores.add(new ResourceLocation(NAMESPACE, "block/" + oreName));
+        }
+
+        ResourceLocation plain = new ResourceLocation(NAMESPACE, "block/plain");
+        ResourceLocation shadowed = new ResourceLocation(NAMESPACE, "block/shadowed");
+        manager.add(new ResourceLocation(NAMESPACE, "textures/block/plain.png"), encode(BenchmarkInputs.background(bgResolution, 1L)));
+        manager.add(new ResourceLocation(NAMESPACE, "textures/block/shadowed.png"), encode(BenchmarkInputs.background(bgResolution, 2L)));
+
+        List<SpriteSource> sources = new ArrayList<>();
+        sources.add(new OreMatrixSource(
+                ores,
+                List.of(
+                        new OreMatrixSource.MatrixBackground(plain, null),
+                        new OreMatrixSource.MatrixBackground(shadowed, ShadowMetadata.DEFAULT)
+                ),
+                NAMESPACE + ":block/{ore_name}_{background_name}"
+        ));
+        if (oreCount >= ANIMATED_INTERVAL * 2)
+        {
+            // Generated under the name of the ore, which the matrix doesn't use
+            ResourceLocation staticOre = ores.get(0);
+            ResourceLocation animatedOre = ores.get(ANIMATED_INTERVAL - 1);
+            sources.add(new OreTextureSource(staticOre, shadowed, ShadowMetadata.DEFAULT, List.of(
+                    new OreTextureSource.OreLayer(ores.get(1), ShadowMetadata.DEFAULT)
+            )));
+            sources.add(new OreTextureSource(animatedOre, plain, null, List.of(
+                    new OreTextureSource.OreLayer(ores.get(ANIMATED_INTERVAL * 2 - 1), ShadowMetadata.DEFAULT),
+                    new OreTextureSource.OreLayer(ores.get(1), null)
+            )));
+        }
+        return new Configuration(name, manager, sources, oreResolution < bgResolution);
+    }
+
+    private static byte[] encode(NativeImage image) throws IOException
+    {
+        try (image)
+        {
+            return image.asByteArray();
+        }
+    }
+
+
+
+    private record Configuration(String name, InMemoryResourceManager resources, List<SpriteSource> sources, boolean upscaledOres)
+    {
+        String goldenName()
+        {
+            return upscaledOres && OTGConfig.NATIVE_RESOLUTION_SHADOWS ? name + "_native_shadows" : name;
+        }
+    }
+
+    // Not a record, the generation report of the atlas is looked up by the identity of its output
+    private static final class CollectingOutput implements SpriteSource.Output
+    {
+        private final Map<ResourceLocation, SpriteSource.SpriteSupplier> suppliers;
+
+        private CollectingOutput(Map<ResourceLocation, SpriteSource.SpriteSupplier> suppliers)
+        {
+            this.suppliers = suppliers;
+        }
+
+        @Override
+        public void add(ResourceLocation id, SpriteSource.SpriteSupplier supplier)
+        {
+            SpriteSource.SpriteSupplier previous = suppliers.put(id, supplier);
+            if (previous != null)
+            {
+                previous.discard();
+            }
+        }
+
+        @Override
+        public void removeAll(Predicate<ResourceLocation> predicate)
+        {
+            suppliers.entrySet().removeIf(entry ->
+            {
+                if (predicate.test(entry.getKey()))
+                {
+                    entry.getValue().discard();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    private record Options(
+            Path resources,
+            @Nullable Path golden,
+            int ores,
+            List<Integer> resolutions,
+            int iterations,
+            int threads,
+            boolean updateGolden
+    )
+    {
+        static Options parse(String[] args)
+        {
+            Path resources = null;
+            Path golden = null;
+            int ores = 64;
+            List<Integer> resolutions = List.of(16, 32, 64, 128);
+            int iterations = 5;
+            int threads = Runtime.getRuntime().availableProcessors();
+            boolean updateGolden = false;
+
+            for (int i = 0; i < args.length; i++)
+            {
+                String arg = args[i];
+                if (arg.equals("--update-golden"))
+                {
+                    updateGolden = true;
+                    continue;
+                }
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Missing value for argument '" + arg + "'");
+                }
+
+                String value = args[++i];
+                switch (arg)
+                {
+                    case "--resources" -> resources = Path.of(value);
+                    case "--golden" -> golden = Path.of(value);
+                    case "--ores" -> ores = parsePositive(arg, value);
+                    case "--iterations" -> iterations = parsePositive(arg, value);
+                    case "--threads" -> threads = parsePositive(arg, value);
+                    case "--resolutions" ->
+                    {
+                        List<Integer> parsed = new ArrayList<>();
+                        for (String resolution : value.split(","))
+                        {
+                            parsed.add(parsePositive(arg, resolution.trim()));
+                        }
+                        resolutions = List.copyOf(parsed);
+                    }
+                    default -> throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+                }
+            }
+
+            if (resources == null)
+            {
+                throw new IllegalArgumentException("The resources directory must be specified");
+            }
+            if (updateGolden && golden == null)
+            {
+                throw new IllegalArgumentException("The golden image directory must be specified to record golden images");
+            }
+            return new Options(resources, golden, ores, resolutions, iterations, threads, updateGolden);
+        }
+
+        private static int parsePositive(String arg, String value)
+        {
+            int result;
+            try
+            {
+                result = Integer.parseInt(value);
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid value for argument '" + arg + "': " + value);
+            }
+            if (result < 1)
+            {
+                throw new IllegalArgumentException("Value of argument '" + arg + "' must be at least 1");
+            }
+            return result;
+        }
+    }
+
+
+
+    private EndToEndHarness() { }
+}
@@ -0,0 +1,194 @@
+package xfacthd.oretexgen.benchmark;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.metadata.MetadataSectionSerializer;
+import net.minecraft.server.packs.resources.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resource manager consisting of a single pack whose resources are held in memory. Metadata of a resource is read
+ * from the resource with the {@code .mcmeta} suffix appended to its path, like in regular packs.
+ */
+final class InMemoryResourceManager implements ResourceManager
+{
+    private static final String METADATA_SUFFIX = ".mcmeta";
+
+    private final Map<ResourceLocation, byte[]> files;
+    private final Pack pack;
+
+    InMemoryResourceManager(String packId)
+    {
+        this(packId, new LinkedHashMap<>());
+    }
+
+    private InMemoryResourceManager(String packId, Map<ResourceLocation, byte[]> files)
+    {
+        this.files = files;
+        this.pack = new Pack(packId);
+    }
+
+    /**
+     * Returns a new manager with the contents of this one, which behaves like a fresh resource reload.
+     */
+    InMemoryResourceManager copy()
+    {
+        return new InMemoryResourceManager(pack.packId, new LinkedHashMap<>(files));
+    }
+
+    void add(ResourceLocation path, byte[] data)
+    {
+        files.put(path, data);
+    }
+
+    boolean contains(ResourceLocation path)
+    {
+        return files.containsKey(path);
+    }
+
+    /**
+     * Adds every file in the given {@code assets} directory, the first directory level is used as the namespace.
+     */
+    void addAssets(Path assets) throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(assets))
+        {
+            for (Path file : (Iterable<Path>) paths.filter(Files::isRegularFile)::iterator)
+            {
+                Path relative = assets.relativize(file);
+                String namespace = relative.getName(0).toString();
+                String path = relative.subpath(1, relative.getNameCount()).toString().replace('\\', '/');
+                add(new ResourceLocation(namespace, path), Files.readAllBytes(file));
+            }
+        }
+    }
+
+    @Override
+    public Optional<Resource> getResource(ResourceLocation location)
+    {
+        byte[] data = files.get(location);
+        if (data == null || location.getPath().endsWith(METADATA_SUFFIX))
+        {
+            return Optional.empty();
+        }
+
+        byte[] metadata = files.get(new ResourceLocation(location.getNamespace(), location.getPath() + METADATA_SUFFIX));
+        return Optional.of(new Resource(
+                pack,
+                () -> new ByteArrayInputStream(data),
+                () -> metadata != null ? ResourceMetadata.fromJsonStream(new ByteArrayInputStream(metadata)) : ResourceMetadata.EMPTY
+        ));
+    }
+
+    @Override
+    public Set<String> getNamespaces()
+    {
+        return files.keySet().stream().map(ResourceLocation::getNamespace).collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<Resource> getResourceStack(ResourceLocation location)
+    {
+        return getResource(location).map(List::of).orElse(List.of());
+    }
+
+    @Override
+    public Map<ResourceLocation, Resource> listResources(String path, Predicate<ResourceLocation> filter)
+    {
+        Map<ResourceLocation, Resource> resources = new TreeMap<>();
+        for (ResourceLocation location : files.keySet())
+        {
+            if (location.getPath().startsWith(path + "/") && filter.test(location))
+            {
+                getResource(location).ifPresent(resource -> resources.put(location, resource));
+            }
+        }
+        return resources;
+    }
+
+    @Override
+    public Map<ResourceLocation, List<Resource>> listResourceStacks(String path, Predicate<ResourceLocation> filter)
+    {
+        Map<ResourceLocation, List<Resource>> stacks = new TreeMap<>();
+        listResources(path, filter).forEach((location, resource) -> stacks.put(location, List.of(resource)));
+        return stacks;
+    }
+
+    @Override
+    public Stream<PackResources> listPacks()
+    {
+        return Stream.of(pack);
+    }
+
+
+
+    private final class Pack implements PackResources
+    {
+        private final String packId;
+
+        private Pack(String packId)
+        {
+            this.packId = packId;
+        }
+
+        @Override
+        public IoSupplier<InputStream> getRootResource(String... elements)
+        {
+            return null;
+        }
+
+        @Override
+        public IoSupplier<InputStream> getResource(PackType type, ResourceLocation location)
+        {
+            byte[] data = type == PackType.CLIENT_RESOURCES ? files.get(location) : null;
+            return data != null ? () -> new ByteArrayInputStream(data) : null;
+        }
+
+        @Override
+        public void listResources(PackType type, String namespace, String path, ResourceOutput output)
+        {
+            if (type != PackType.CLIENT_RESOURCES)
+            {
+                return;
+            }
+            files.forEach((location, data) ->
+            {
+                if (location.getNamespace().equals(namespace) && location.getPath().startsWith(path + "/"))
+                {
+                    output.accept(location, () -> new ByteArrayInputStream(data));
+                }
+            });
+        }
+
+        @Override
+        public Set<String> getNamespaces(PackType type)
+        {
+            return type == PackType.CLIENT_RESOURCES ? InMemoryResourceManager.this.getNamespaces() : Set.of();
+        }
+
+        @Override
+        public <T> T getMetadataSection(MetadataSectionSerializer<T> deserializer)
+        {
+            return null;
+        }
+
+        @Override
+        public String packId()
+        {
+            return packId;
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,68 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.shadow.Palette;
+import xfacthd.oretexgen.client.shadow.ShadeTable;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaletteBenchmark
+{
+    @Param({ "16", "32", "64", "128", "512" })
+    public int resolution;
+    @Param({ "0", "125", "250" })
+    public int paletteExpansion;
+
+    private NativeImage background;
+    private Palette palette;
+    private ShadeTable shadeTable;
+    private int[] pixels;
+
+    @Setup
+    public void setup()
+    {
+        background = BenchmarkInputs.background(resolution);
+        palette = new Palette(background, paletteExpansion);
+        shadeTable = palette.getShadeTable(ShadowMetadata.DEFAULT);
+        pixels = background.getPixelsRGBA();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        background.close();
+    }
+
+    @Benchmark
+    public Palette build()
+    {
+        return new Palette(background, paletteExpansion);
+    }
+
+    @Benchmark
+    public void lookup(Blackhole blackhole)
+    {
+        for (int pixel : pixels)
+        {
+            blackhole.consume(palette.getIndex(pixel));
+        }
+    }
+
+    @Benchmark
+    public void shade(Blackhole blackhole)
+    {
+        for (int pixel : pixels)
+        {
+            blackhole.consume(shadeTable.shade(pixel, (pixel & 1) != 0));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xfacthd.oretexgen.client.util.PixelView;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures upscaling a stock 16x16 texture with {@link Utils#copyScaled} against reading a
+ * {@linkplain PixelView#scaled(int) scaled view} of it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScaleBenchmark
+{
+    @Param({ "32", "64", "128", "512" })
+    public int resolution;
+    @Param({ "1", "8" })
+    public int frames;
+
+    private NativeImage source;
+    private int scale;
+    private int[] row;
+
+    @Setup
+    public void setup()
+    {
+        source = BenchmarkInputs.ore("diamond_ore", 16, frames);
+        scale = resolution / 16;
+        row = new int[resolution];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        source.close();
+    }
+
+    @Benchmark
+    public void copyScaled(Blackhole blackhole)
+    {
+        NativeImage scaled = Utils.copyScaled(source, scale);
+        blackhole.consume(scaled);
+        scaled.close();
+    }
+
+    @Benchmark
+    public int[] readScaledView()
+    {
+        PixelView view = PixelView.of(source).scaled(scale);
+        for (int y = 0; y < view.height(); y++)
+        {
+            view.readRow(0, y, view.width(), row, 0);
+        }
+        return row;
+    }
+}
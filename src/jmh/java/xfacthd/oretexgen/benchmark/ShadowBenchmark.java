@@ -0,0 +1,86 @@
+package xfacthd.oretexgen.benchmark;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import org.openjdk.jmh.annotations.*;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.shadow.Palette;
+import xfacthd.oretexgen.client.shadow.ShadowGenerator;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the shadow kernel for a single frame. The {@code reference} kernel is the per-pixel implementation on
+ * {@link NativeImage}, the other kernels use {@link PixelView}s with native or per-pixel access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShadowBenchmark
+{
+    @Param({ "16", "32", "64", "128", "512" })
+    public int resolution;
+    @Param({ "coal_ore", "diamond_ore", "synthetic" })
+    public String ore;
+    @Param({ "default", "strong", "wide" })
+    public String shadow;
+    @Param({ "native", "view", "reference" })
+    public String kernel;
+
+    private NativeImage foreground;
+    private NativeImage background;
+    private NativeImage output;
+    private PixelView foregroundView;
+    private PixelView backgroundView;
+    private PixelView outputView;
+    private Palette palette;
+    private ShadowMetadata shadowMetadata;
+    private FrameSize size;
+    private FrameInfo frame;
+
+    @Setup
+    public void setup()
+    {
+        foreground = BenchmarkInputs.ore(ore, resolution, 1);
+        background = BenchmarkInputs.background(resolution);
+        output = BenchmarkInputs.copy(background);
+        shadowMetadata = BenchmarkInputs.shadow(shadow);
+        palette = new Palette(background, shadowMetadata.paletteExpansion());
+        size = BenchmarkInputs.frameSize(resolution);
+        frame = BenchmarkInputs.firstFrame();
+
+        boolean useNative = kernel.equals("native");
+        foregroundView = useNative ? PixelView.of(foreground) : PixelView.reference(foreground);
+        backgroundView = useNative ? PixelView.of(background) : PixelView.reference(background);
+        outputView = useNative ? PixelView.of(output) : PixelView.reference(output);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        foreground.close();
+        background.close();
+        output.close();
+    }
+
+    @Benchmark
+    public NativeImage generateShadow()
+    {
+        if (kernel.equals("reference"))
+        {
+            ShadowGenerator.generateShadow(output, foreground, background, palette, frame, size, shadowMetadata);
+        }
+        else
+        {
+            ShadowGenerator.generateShadow(
+                    outputView, foregroundView, backgroundView, palette, frame, size, shadowMetadata, 0, size.height()
+            );
+        }
+        return output;
+    }
+}
@@ -5,6 +5,7 @@ import net.minecraftforge.client.event.RegisterClientReloadListenersEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.loader.OreMatrixSource;
 import xfacthd.oretexgen.client.loader.OreTextureSource;
 
 @Mod.EventBusSubscriber(modid = OreTextureGenerator.MODID, bus = Mod.EventBusSubscriber.Bus.MOD, value = Dist.CLIENT)
@@ -14,6 +15,7 @@ public final class OTGClient
     public static void onRegisterReloadListeners(final RegisterClientReloadListenersEvent event)
     {
         OreTextureSource.register();
+        OreMatrixSource.register();
     }
 
 
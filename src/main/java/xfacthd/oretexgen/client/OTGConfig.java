@@ -0,0 +1,66 @@
+package xfacthd.oretexgen.client;
+
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.nio.file.Path;
+
+/**
+ * Generator settings, read once from system properties (i.e. {@code -Doretexgen.disk_cache=false}).
+ */
+public final class OTGConfig
+{
+    private static final String PREFIX = "oretexgen.";
+
+    /** Whether generated textures are stored in and loaded from the persistent disk cache. */
+    public static final boolean DISK_CACHE = getBoolean("disk_cache", true);
+    /** Maximum size of the persistent disk cache in MiB, least recently used entries are evicted beyond that. */
+    public static final long DISK_CACHE_MAX_SIZE = Long.getLong(PREFIX + "disk_cache.max_size", 256L) * 1024L * 1024L;
+    /**
+     * Maximum size in MiB of the deflated textures retained in memory to restore unchanged sprites on the next reload,
+     * 0 disables retaining textures.
+     */
+    public static final long RETAINED_TEXTURES_MAX_SIZE = Long.getLong(PREFIX + "retained.max_size", 32L) * 1024L * 1024L;
+    /**
+     * Maximum estimated native memory in MiB held by concurrently generated textures, further textures wait until
+     * enough memory has been freed. 0 disables the limit.
+     */
+    public static final long NATIVE_MEMORY_BUDGET = Long.getLong(PREFIX + "memory_budget", 512L) * 1024L * 1024L;
+    /** Use the per-pixel reference implementation of all kernels to verify the optimized implementation. */
+    public static final boolean REFERENCE_KERNELS = getBoolean("reference_kernels", false);
+    /** Use the Vector API kernels if the {@code jdk.incubator.vector} module is available. */
+    public static final boolean VECTOR_KERNELS = getBoolean("vector_kernels", false);
+    /**
+     * Compute the shadow of upscaled ores at their native resolution, which widens it by the scale factor. Off by
+     * default to keep the one pixel wide shadow at the resolution of the result.
+     */
+    public static final boolean NATIVE_RESOLUTION_SHADOWS = getBoolean("shadow.native_resolution", false);
+    /** Compose animation frames with identical ore pixels once and copy the result to the duplicates. */
+    public static final boolean DEDUPLICATE_FRAMES = getBoolean("deduplicate_frames", true);
+    /** Maximum amount of frames or row bands of one texture which are composed concurrently, 1 disables splitting. */
+    public static final int COMPOSE_PARALLELISM = Integer.getInteger(
+            PREFIX + "compose.parallelism", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)
+    );
+
+    /**
+     * Returns the directory of the persistent disk cache, defaults to {@code oretexgen_cache} in the game directory.
+     */
+    public static Path getDiskCacheDirectory()
+    {
+        String dir = System.getProperty(PREFIX + "disk_cache.dir");
+        if (dir != null)
+        {
+            return Path.of(dir);
+        }
+        return FMLPaths.GAMEDIR.get().resolve("oretexgen_cache");
+    }
+
+    private static boolean getBoolean(String name, boolean defaultValue)
+    {
+        String value = System.getProperty(PREFIX + name);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+
+
+    private OTGConfig() { }
+}
@@ -0,0 +1,340 @@
+package xfacthd.oretexgen.client.bake;
+
+import com.google.gson.*;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.JsonOps;
+import net.minecraft.client.renderer.texture.MissingTextureAtlasSprite;
+import net.minecraft.client.renderer.texture.SpriteContents;
+import net.minecraft.client.renderer.texture.atlas.SpriteSource;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.PackType;
+import net.minecraft.server.packs.PathPackResources;
+import net.minecraft.server.packs.resources.MultiPackResourceManager;
+import net.minecraft.server.packs.resources.ResourceManager;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.loader.OreMatrixSource;
+import xfacthd.oretexgen.client.loader.OreTextureSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
+
+/**
+ * Generates all ore textures of an atlas definition without starting the game and writes them to a resource pack.
+ * Later packs override earlier ones, the disk cache is only used if a cache directory is given.
+ * <p>
+ * Usage: {@code OreTextureBaker --pack <dir> [--pack <dir>...] --atlas <file> --output <dir> [--threads <n>]
+ * [--cache <dir>]}
+ */
+public final class OreTextureBaker
+{
+    private static final String USAGE = "Usage: OreTextureBaker --pack <dir> [--pack <dir>...] --atlas <file> --output <dir> [--threads <n>] [--cache <dir>]";
+    private static final Map<String, Codec<? extends SpriteSource>> SOURCE_CODECS = Map.of(
+            OreTextureGenerator.MODID + ":ore_generator", OreTextureSource.CODEC,
+            OreTextureGenerator.MODID + ":ore_matrix", OreMatrixSource.CODEC
+    );
+    private static final int PACK_FORMAT = 15;
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    public static void main(String[] args)
+    {
+        Options options;
+        try
+        {
+            options = Options.parse(args);
+        }
+        catch (IllegalArgumentException e)
+        {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Must happen before the config is loaded by the first generator
+        if (options.cache() != null)
+        {
+            System.setProperty("oretexgen.disk_cache.dir", options.cache().toString());
+        }
+        else if (System.getProperty("oretexgen.disk_cache") == null)
+        {
+            System.setProperty("oretexgen.disk_cache", "false");
+        }
+        // There is no subsequent reload to restore textures in
+        if (System.getProperty("oretexgen.retained.max_size") == null)
+        {
+            System.setProperty("oretexgen.retained.max_size", "0");
+        }
+
+        try
+        {
+            Result result = bake(options);
+            System.out.printf("Baked %d of %d ore textures into '%s'%n", result.baked(), result.total(), options.output());
+            System.exit(result.baked() == result.total() ? 0 : 1);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.error("Failed to bake ore textures", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates all ore textures of the atlas definition and writes them to the output pack.
+     */
+    public static Result bake(Options options) throws IOException
+    {
+        List<SpriteSource> sources = readSources(options.atlas());
+
+        List<PackResources> packs = new ArrayList<>();
+        for (int i = 0; i < options.packs().size(); i++)
+        {
+            packs.add(new PathPackResources("bake_input_" + i, options.packs().get(i), false));
+        }
+
+        try (MultiPackResourceManager manager = new MultiPackResourceManager(PackType.CLIENT_RESOURCES, packs))
+        {
+            Map<ResourceLocation, SpriteSource.SpriteSupplier> suppliers = collectSuppliers(manager, sources);
+            writePackMeta(options.output());
+
+            ForkJoinPool pool = new ForkJoinPool(options.threads());
+            try
+            {
+                List<ForkJoinTask<Boolean>> tasks = new ArrayList<>(suppliers.size());
+                suppliers.forEach((id, supplier) -> tasks.add(pool.submit(
+                        () -> bakeSprite(id, supplier, options.output())
+                )));
+
+                int baked = 0;
+                for (ForkJoinTask<Boolean> task : tasks)
+                {
+                    if (task.join())
+                    {
+                        baked++;
+                    }
+                }
+                return new Result(suppliers.size(), baked);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Reads the {@code oretexgen:ore_generator} and {@code oretexgen:ore_matrix} sources of the given atlas definition.
+     */
+    public static List<SpriteSource> readSources(Path atlas) throws IOException
+    {
+        JsonObject json;
+        try (Reader reader = Files.newBufferedReader(atlas))
+        {
+            json = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+
+        List<SpriteSource> sources = new ArrayList<>();
+        for (JsonElement element : json.getAsJsonArray("sources"))
+        {
+            JsonObject source = element.getAsJsonObject();
+            Codec<? extends SpriteSource> codec = source.has("type") ? SOURCE_CODECS.get(source.get("type").getAsString()) : null;
+            if (codec == null)
+            {
+                continue;
+            }
+
+            sources.add(codec.parse(JsonOps.INSTANCE, source).getOrThrow(false, msg ->
+                    OreTextureGenerator.LOGGER.error("Invalid ore texture source in '{}': {}", atlas, msg)
+            ));
+        }
+        return sources;
+    }
+
+    private static Map<ResourceLocation, SpriteSource.SpriteSupplier> collectSuppliers(
+            ResourceManager manager, List<SpriteSource> sources
+    )
+    {
+        Map<ResourceLocation, SpriteSource.SpriteSupplier> suppliers = new LinkedHashMap<>();
+        SpriteSource.Output output = new SpriteSource.Output()
+        {
+            @Override
+            public void add(ResourceLocation id, SpriteSource.SpriteSupplier supplier)
+            {
+                SpriteSource.SpriteSupplier previous = suppliers.put(id, supplier);
+                if (previous != null)
+                {
+                    previous.discard();
+                }
+            }
+
+            @Override
+            public void removeAll(Predicate<ResourceLocation> predicate)
+            {
+                suppliers.entrySet().removeIf(entry ->
+                {
+                    if (predicate.test(entry.getKey()))
+                    {
+                        entry.getValue().discard();
+                        return true;
+                    }
+                    return false;
+                });
+            }
+        };
+
+        sources.forEach(source -> source.run(manager, output));
+        return suppliers;
+    }
+
+    private static boolean bakeSprite(ResourceLocation id, SpriteSource.SpriteSupplier supplier, Path output)
+    {
+        SpriteContents contents = supplier.get();
+        try
+        {
+            if (contents.name().equals(MissingTextureAtlasSprite.getLocation()))
+            {
+                // The cause has already been logged by the supplier
+                return false;
+            }
+
+            ResourceLocation texturePath = SpriteSource.TEXTURE_ID_CONVERTER.idToFile(id);
+            Path file = output.resolve(PackType.CLIENT_RESOURCES.getDirectory())
+                    .resolve(texturePath.getNamespace())
+                    .resolve(texturePath.getPath());
+            Files.createDirectories(file.getParent());
+            contents.getOriginalImage().writeToFile(file);
+
+            // The animation is taken from the ore, matrix sprites are named differently from their ore
+            AnimationMetadataSection animation = OreTextureSource.getOreAnimation(supplier)
+                    .orElse(AnimationMetadataSection.EMPTY);
+            if (animation != AnimationMetadataSection.EMPTY)
+            {
+                Path metaFile = file.resolveSibling(file.getFileName() + ".mcmeta");
+                writeAnimation(metaFile, animation, contents.width(), contents.height());
+            }
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.error("Failed to write baked ore texture '{}'", id, e);
+            return false;
+        }
+        finally
+        {
+            contents.close();
+        }
+    }
+
+    private static void writeAnimation(Path file, AnimationMetadataSection animation, int width, int height) throws IOException
+    {
+        JsonArray frames = new JsonArray();
+        animation.forEachFrame((idx, time) ->
+        {
+            JsonObject frame = new JsonObject();
+            frame.addProperty("index", idx);
+            frame.addProperty("time", time);
+            frames.add(frame);
+        });
+
+        JsonObject section = new JsonObject();
+        section.addProperty("frametime", animation.getDefaultFrameTime());
+        section.addProperty("interpolate", animation.isInterpolatedFrames());
+        // The frame size may differ from the source texture due to upscaling
+        section.addProperty("width", width);
+        section.addProperty("height", height);
+        if (frames.size() > 0)
+        {
+            section.add("frames", frames);
+        }
+
+        JsonObject json = new JsonObject();
+        json.add("animation", section);
+        Files.writeString(file, GSON.toJson(json));
+    }
+
+    private static void writePackMeta(Path output) throws IOException
+    {
+        Path file = output.resolve("pack.mcmeta");
+        if (Files.exists(file))
+        {
+            return;
+        }
+
+        JsonObject pack = new JsonObject();
+        pack.addProperty("pack_format", PACK_FORMAT);
+        pack.addProperty("description", "Pre-baked ore textures");
+        JsonObject json = new JsonObject();
+        json.add("pack", pack);
+
+        Files.createDirectories(output);
+        Files.writeString(file, GSON.toJson(json));
+    }
+
+
+
+    public record Options(List<Path> packs, Path atlas, Path output, int threads, @Nullable Path cache)
+    {
+        public static Options parse(String[] args)
+        {
+            List<Path> packs = new ArrayList<>();
+            Path atlas = null;
+            Path output = null;
+            Path cache = null;
+            int threads = Runtime.getRuntime().availableProcessors();
+
+            for (int i = 0; i < args.length; i++)
+            {
+                String arg = args[i];
+                if (i + 1 >= args.length)
+                {
+                    throw new IllegalArgumentException("Missing value for argument '" + arg + "'");
+                }
+
+                String value = args[++i];
+                switch (arg)
+                {
+                    case "--pack" -> packs.add(Path.of(value));
+                    case "--atlas" -> atlas = Path.of(value);
+                    case "--output" -> output = Path.of(value);
+                    case "--cache" -> cache = Path.of(value);
+                    case "--threads" ->
+                    {
+                        try
+                        {
+                            threads = Integer.parseInt(value);
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            throw new IllegalArgumentException("Invalid thread count: " + value);
+                        }
+                        if (threads < 1)
+                        {
+                            throw new IllegalArgumentException("Thread count must be at least 1");
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown argument '" + arg + "'");
+                }
+            }
+
+            if (packs.isEmpty() || atlas == null || output == null)
+            {
+                throw new IllegalArgumentException("At least one pack, the atlas and the output must be specified");
+            }
+            return new Options(List.copyOf(packs), atlas, output, threads, cache);
+        }
+    }
+
+    public record Result(int total, int baked) { }
+
+
+
+    private OreTextureBaker() { }
+}
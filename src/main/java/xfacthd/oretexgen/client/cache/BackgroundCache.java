@@ -0,0 +1,254 @@
+package xfacthd.oretexgen.client.cache;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.PackResources;
+import net.minecraft.server.packs.resources.Resource;
+import xfacthd.oretexgen.client.shadow.Palette;
+import xfacthd.oretexgen.client.util.ContentHash;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reload-scoped cache of decoded background images and their {@link Palette}s, an image is freed once the last
+ * {@link Handle} for it has been released.
+ */
+public final class BackgroundCache
+{
+    private static final Map<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    public static Handle acquire(ResourceLocation path, Resource resource)
+    {
+        Key key = new Key(path, resource.source());
+        Entry entry = ENTRIES.compute(key, (k, e) ->
+        {
+            if (e == null)
+            {
+                e = new Entry(path, resource);
+            }
+            e.refCount++;
+            return e;
+        });
+        return new Handle(key, entry);
+    }
+
+    /**
+     * Returns a new handle for the given background if another handle for it is still held.
+     */
+    public static Optional<Handle> acquireIfPresent(ResourceLocation path, Resource resource)
+    {
+        Key key = new Key(path, resource.source());
+        Entry entry = ENTRIES.computeIfPresent(key, (k, e) ->
+        {
+            e.refCount++;
+            return e;
+        });
+        return Optional.ofNullable(entry).map(e -> new Handle(key, e));
+    }
+
+    /**
+     * Decodes the given background and builds its {@link Palette} on the given executor, a negative expansion skips the
+     * palette. Backgrounds no longer used by any supplier are skipped, failures are reported by the suppliers.
+     */
+    public static void prefetch(ResourceLocation path, Resource resource, int paletteExpansion, Executor executor)
+    {
+        Optional<Handle> optHandle = acquireIfPresent(path, resource);
+        if (optHandle.isEmpty())
+        {
+            return;
+        }
+
+        Handle handle = optHandle.get();
+        try
+        {
+            executor.execute(() ->
+            {
+                try
+                {
+                    if (paletteExpansion >= 0)
+                    {
+                        handle.getPalette(paletteExpansion);
+                    }
+                    else
+                    {
+                        handle.getImage();
+                    }
+                }
+                catch (IOException | RuntimeException ignored) { }
+                finally
+                {
+                    handle.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            handle.release();
+        }
+    }
+
+    private static void release(Key key)
+    {
+        ENTRIES.computeIfPresent(key, (k, e) ->
+        {
+            e.refCount--;
+            if (e.refCount > 0)
+            {
+                return e;
+            }
+            e.close();
+            return null;
+        });
+    }
+
+
+
+    public static final class Handle
+    {
+        private final Key key;
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Handle(Key key, Entry entry)
+        {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        public ResourceLocation path()
+        {
+            return entry.path;
+        }
+
+        public Resource resource()
+        {
+            return entry.resource;
+        }
+
+        /**
+         * Returns the content hash of the raw background resource.
+         */
+        public String getContentHash() throws IOException
+        {
+            return entry.getContentHash();
+        }
+
+        /**
+         * Returns the background image, which is owned by the cache and must neither be modified nor closed.
+         */
+        public NativeImage getImage() throws IOException
+        {
+            return entry.getDecoded().image;
+        }
+
+        /**
+         * Returns the {@link Palette} of the background image with the given palette expansion.
+         */
+        public Palette getPalette(int paletteExpansion) throws IOException
+        {
+            Decoded decoded = entry.getDecoded();
+            return decoded.palettes.computeIfAbsent(paletteExpansion, exp -> new Palette(decoded.image, exp));
+        }
+
+        public void release()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                BackgroundCache.release(key);
+            }
+        }
+    }
+
+    private record Key(ResourceLocation path, PackResources source) { }
+
+    private record Decoded(NativeImage image, Map<Integer, Palette> palettes) { }
+
+    private static final class Entry
+    {
+        private final ResourceLocation path;
+        private final Resource resource;
+        private final AtomicReference<CompletableFuture<Decoded>> decoded = new AtomicReference<>();
+        private volatile String contentHash = null;
+        private int refCount = 0; // Guarded by ENTRIES.compute()
+
+        private Entry(ResourceLocation path, Resource resource)
+        {
+            this.path = path;
+            this.resource = resource;
+        }
+
+        private String getContentHash() throws IOException
+        {
+            String hash = contentHash;
+            if (hash == null)
+            {
+                // Racing threads compute the same value, no need to block here
+                hash = new ContentHash().putResource(resource).build();
+                contentHash = hash;
+            }
+            return hash;
+        }
+
+        private Decoded getDecoded() throws IOException
+        {
+            CompletableFuture<Decoded> future = new CompletableFuture<>();
+            CompletableFuture<Decoded> existing = decoded.compareAndExchange(null, future);
+            if (existing == null)
+            {
+                try
+                {
+                    future.complete(new Decoded(load(), new ConcurrentHashMap<>()));
+                }
+                catch (Throwable t)
+                {
+                    future.completeExceptionally(t);
+                }
+            }
+            else
+            {
+                future = existing;
+            }
+
+            try
+            {
+                return future.join();
+            }
+            catch (CompletionException e)
+            {
+                if (e.getCause() instanceof IOException ioe)
+                {
+                    throw ioe;
+                }
+                throw new IOException("Failed to load background '" + path + "'", e.getCause());
+            }
+        }
+
+        private NativeImage load() throws IOException
+        {
+            try (InputStream stream = resource.open())
+            {
+                return NativeImage.read(stream);
+            }
+        }
+
+        private void close()
+        {
+            CompletableFuture<Decoded> future = decoded.getAndSet(null);
+            if (future != null)
+            {
+                // A decode still in progress frees its image once it completes
+                future.thenAccept(d -> d.image.close());
+            }
+        }
+    }
+
+
+
+    private BackgroundCache() { }
+}
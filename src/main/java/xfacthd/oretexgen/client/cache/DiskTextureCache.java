@@ -0,0 +1,324 @@
+package xfacthd.oretexgen.client.cache;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraftforge.fml.ModList;
+import org.lwjgl.system.MemoryUtil;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.OTGConfig;
+import xfacthd.oretexgen.client.util.PixelView;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of generated ore textures, keyed by a content hash over all inputs of a texture. Entries store the
+ * raw RGBA pixels of the finished image and are deleted and treated as a miss if they fail validation.
+ */
+public final class DiskTextureCache
+{
+    private static final int MAGIC = 0x4F544743; // "OTGC"
+    private static final int FORMAT_VERSION = 1;
+    /** Revision of the generator output, must be incremented whenever a change alters the generated pixels. */
+    private static final int GENERATOR_REVISION = 4;
+    private static final int HEADER_SIZE = 7 * Integer.BYTES;
+    private static final String EXTENSION = ".bin";
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final Map<String, IndexEntry> INDEX = new ConcurrentHashMap<>();
+    private static volatile Path directory = null;
+    private static volatile boolean initialized = false;
+    private static long totalSize = 0;
+
+    /**
+     * Returns the string which invalidates all cache entries when it changes between launches.
+     */
+    public static String getVersionTag()
+    {
+        String modVersion = "unknown";
+        ModList modList = ModList.get();
+        if (modList != null)
+        {
+            modVersion = modList.getModContainerById(OreTextureGenerator.MODID)
+                    .map(container -> container.getModInfo().getVersion().toString())
+                    .orElse(modVersion);
+        }
+        String shadows = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? "native" : "legacy";
+        return modVersion + "/" + FORMAT_VERSION + "/" + GENERATOR_REVISION + "/" + shadows;
+    }
+
+    public static boolean isEnabled()
+    {
+        return OTGConfig.DISK_CACHE && (initialized ? directory != null : init());
+    }
+
+    /**
+     * Loads the texture stored under the given key, returns an empty optional on a miss or if the entry is unusable.
+     */
+    public static Optional<CachedTexture> load(String key)
+    {
+        if (!isEnabled() || !INDEX.containsKey(key))
+        {
+            return Optional.empty();
+        }
+
+        Path path = directory.resolve(key + EXTENSION);
+        NativeImage image = null;
+        ByteBuffer buffer = null;
+        // Read into a buffer owned by the cache instead of mapping the file, a live mapping would prevent deleting or
+        // replacing the entry on Windows
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE)
+            {
+                throw new IOException("Truncated header or oversized file");
+            }
+
+            buffer = MemoryUtil.memAlloc((int) fileSize);
+            while (buffer.hasRemaining())
+            {
+                if (channel.read(buffer) < 0)
+                {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            buffer.flip();
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int frameWidth = buffer.getInt();
+            int frameHeight = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (magic != MAGIC || version != FORMAT_VERSION)
+            {
+                throw new IOException("Unknown format");
+            }
+            if (width <= 0 || height <= 0 || frameWidth <= 0 || frameHeight <= 0 || fileSize != HEADER_SIZE + (long) width * height * 4L)
+            {
+                throw new IOException("Invalid dimensions or truncated pixel data");
+            }
+
+            ByteBuffer pixels = buffer.slice(HEADER_SIZE, (int) (fileSize - HEADER_SIZE));
+            CRC32 crc = new CRC32();
+            crc.update(pixels.duplicate());
+            if ((int) crc.getValue() != checksum)
+            {
+                throw new IOException("Checksum mismatch");
+            }
+
+            image = new NativeImage(NativeImage.Format.RGBA, width, height, false);
+            PixelView.of(image).copyFrom(MemoryUtil.memAddress(pixels));
+
+            markUsed(key, path);
+            return Optional.of(new CachedTexture(image, new FrameSize(frameWidth, frameHeight)));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.warn("Discarding unusable ore texture cache entry '{}'", path, e);
+            if (image != null)
+            {
+                image.close();
+            }
+            remove(key, path);
+            return Optional.empty();
+        }
+        finally
+        {
+            if (buffer != null)
+            {
+                MemoryUtil.memFree(buffer);
+            }
+        }
+    }
+
+    /**
+     * Stores the given image under the given key. Failures are logged and otherwise ignored.
+     */
+    public static void store(String key, NativeImage image, FrameSize frameSize)
+    {
+        if (!isEnabled() || image.format() != NativeImage.Format.RGBA)
+        {
+            return;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        try
+        {
+            PixelView.of(image).copyTo(MemoryUtil.memAddress(pixels));
+            store(key, pixels, width, height, frameSize);
+        }
+        finally
+        {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    private static void store(String key, ByteBuffer pixels, int width, int height, FrameSize frameSize)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(pixels.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(width)
+                .putInt(height)
+                .putInt(frameSize.width())
+                .putInt(frameSize.height())
+                .putInt((int) crc.getValue())
+                .flip();
+
+        Path path = directory.resolve(key + EXTENSION);
+        Path tmpPath = directory.resolve(key + "." + Thread.currentThread().getId() + TMP_EXTENSION);
+        try
+        {
+            try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                while (header.hasRemaining())
+                {
+                    channel.write(header);
+                }
+                while (pixels.hasRemaining())
+                {
+                    channel.write(pixels);
+                }
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            OreTextureGenerator.LOGGER.warn("Failed to store ore texture cache entry '{}'", path, e);
+            try
+            {
+                Files.deleteIfExists(tmpPath);
+            }
+            catch (IOException ignored) { }
+            return;
+        }
+
+        add(key, HEADER_SIZE + (long) width * height * 4L);
+    }
+
+    private static synchronized boolean init()
+    {
+        if (initialized)
+        {
+            return directory != null;
+        }
+
+        try
+        {
+            Path dir = OTGConfig.getDiskCacheDirectory();
+            Files.createDirectories(dir);
+            try (Stream<Path> files = Files.list(dir))
+            {
+                for (Path file : (Iterable<Path>) files::iterator)
+                {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TMP_EXTENSION))
+                    {
+                        // Left behind by an interrupted write
+                        Files.deleteIfExists(file);
+                    }
+                    else if (name.endsWith(EXTENSION))
+                    {
+                        String key = name.substring(0, name.length() - EXTENSION.length());
+                        long size = Files.size(file);
+                        long lastUsed = Files.getLastModifiedTime(file).toMillis();
+                        INDEX.put(key, new IndexEntry(size, lastUsed));
+                        totalSize += size;
+                    }
+                }
+            }
+            directory = dir;
+            evict();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.error("Failed to initialize ore texture cache, caching will be disabled", e);
+            INDEX.clear();
+            directory = null;
+        }
+        initialized = true;
+        return directory != null;
+    }
+
+    private static void markUsed(String key, Path path)
+    {
+        long now = System.currentTimeMillis();
+        INDEX.computeIfPresent(key, (k, entry) -> new IndexEntry(entry.size, now));
+        try
+        {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(now));
+        }
+        catch (IOException ignored) { }
+    }
+
+    private static synchronized void add(String key, long size)
+    {
+        IndexEntry previous = INDEX.put(key, new IndexEntry(size, System.currentTimeMillis()));
+        if (previous != null)
+        {
+            totalSize -= previous.size;
+        }
+        totalSize += size;
+        evict();
+    }
+
+    private static synchronized void remove(String key, Path path)
+    {
+        IndexEntry entry = INDEX.remove(key);
+        if (entry != null)
+        {
+            totalSize -= entry.size;
+        }
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e)
+        {
+            OreTextureGenerator.LOGGER.warn("Failed to delete ore texture cache entry '{}'", path, e);
+        }
+    }
+
+    private static synchronized void evict()
+    {
+        if (totalSize <= OTGConfig.DISK_CACHE_MAX_SIZE)
+        {
+            return;
+        }
+
+        List<Map.Entry<String, IndexEntry>> entries = new ArrayList<>(INDEX.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        for (Map.Entry<String, IndexEntry> entry : entries)
+        {
+            if (totalSize <= OTGConfig.DISK_CACHE_MAX_SIZE)
+            {
+                break;
+            }
+            remove(entry.getKey(), directory.resolve(entry.getKey() + EXTENSION));
+        }
+    }
+
+
+
+    public record CachedTexture(NativeImage image, FrameSize frameSize) { }
+
+    private record IndexEntry(long size, long lastUsed) { }
+
+
+
+    private DiskTextureCache() { }
+}
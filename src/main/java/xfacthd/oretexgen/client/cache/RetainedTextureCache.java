@@ -0,0 +1,183 @@
+package xfacthd.oretexgen.client.cache;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.resources.ResourceLocation;
+import org.lwjgl.system.MemoryUtil;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.OTGConfig;
+import xfacthd.oretexgen.client.util.PixelView;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * In-memory cache of the ore textures generated during previous resource reloads, one per sprite with the fingerprint
+ * of its inputs. Entries are deflated and bounded by {@link OTGConfig#RETAINED_TEXTURES_MAX_SIZE}.
+ */
+public final class RetainedTextureCache
+{
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int CHUNK_SIZE = 8192;
+    private static final Map<ResourceLocation, Entry> ENTRIES = new LinkedHashMap<>(64, 0.75F, true);
+    private static long totalSize = 0;
+
+    public static boolean isEnabled()
+    {
+        return OTGConfig.RETAINED_TEXTURES_MAX_SIZE > 0L;
+    }
+
+    /**
+     * Restores the texture retained for the given sprite if it was generated from inputs with the given fingerprint.
+     */
+    public static Optional<DiskTextureCache.CachedTexture> load(ResourceLocation sprite, String fingerprint)
+    {
+        if (!isEnabled())
+        {
+            return Optional.empty();
+        }
+
+        Entry entry;
+        synchronized (ENTRIES)
+        {
+            entry = ENTRIES.get(sprite);
+        }
+        if (entry == null || !entry.fingerprint.equals(fingerprint))
+        {
+            return Optional.empty();
+        }
+
+        int byteSize = entry.width * entry.height * 4;
+        ByteBuffer pixels = MemoryUtil.memAlloc(byteSize);
+        NativeImage image = null;
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(entry.data);
+            while (pixels.hasRemaining() && !inflater.finished())
+            {
+                if (inflater.inflate(pixels) == 0 && inflater.needsInput())
+                {
+                    throw new DataFormatException("Truncated pixel data");
+                }
+            }
+            if (pixels.hasRemaining())
+            {
+                throw new DataFormatException("Truncated pixel data");
+            }
+
+            pixels.rewind();
+            image = new NativeImage(NativeImage.Format.RGBA, entry.width, entry.height, false);
+            PixelView.of(image).copyFrom(MemoryUtil.memAddress(pixels));
+            return Optional.of(new DiskTextureCache.CachedTexture(image, entry.frameSize));
+        }
+        catch (DataFormatException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.warn("Discarding unusable retained ore texture '{}'", sprite, e);
+            if (image != null)
+            {
+                image.close();
+            }
+            remove(sprite, entry);
+            return Optional.empty();
+        }
+        finally
+        {
+            inflater.end();
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    /**
+     * Retains the given image for the given sprite and fingerprint, replacing the texture retained for the sprite.
+     */
+    public static void store(ResourceLocation sprite, String fingerprint, NativeImage image, FrameSize frameSize)
+    {
+        if (!isEnabled() || image.format() != NativeImage.Format.RGBA)
+        {
+            return;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] data;
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            PixelView.of(image).copyTo(MemoryUtil.memAddress(pixels));
+            deflater.setInput(pixels);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            while (!deflater.finished())
+            {
+                int count = deflater.deflate(chunk);
+                out.write(chunk, 0, count);
+            }
+            data = out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+            MemoryUtil.memFree(pixels);
+        }
+
+        Entry entry = new Entry(fingerprint, width, height, frameSize, data);
+        if (entry.size() > OTGConfig.RETAINED_TEXTURES_MAX_SIZE)
+        {
+            remove(sprite, null);
+            return;
+        }
+
+        synchronized (ENTRIES)
+        {
+            Entry previous = ENTRIES.put(sprite, entry);
+            if (previous != null)
+            {
+                totalSize -= previous.size();
+            }
+            totalSize += entry.size();
+
+            Iterator<Entry> it = ENTRIES.values().iterator();
+            while (totalSize > OTGConfig.RETAINED_TEXTURES_MAX_SIZE && it.hasNext())
+            {
+                totalSize -= it.next().size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the texture retained for the given sprite if it is the given entry or if the given entry is {@code null}.
+     */
+    private static void remove(ResourceLocation sprite, Entry expected)
+    {
+        synchronized (ENTRIES)
+        {
+            Entry entry = ENTRIES.get(sprite);
+            if (entry != null && (expected == null || entry == expected))
+            {
+                ENTRIES.remove(sprite);
+                totalSize -= entry.size();
+            }
+        }
+    }
+
+
+
+    private record Entry(String fingerprint, int width, int height, FrameSize frameSize, byte[] data)
+    {
+        long size()
+        {
+            return ENTRY_OVERHEAD + fingerprint.length() + data.length;
+        }
+    }
+
+
+
+    private RetainedTextureCache() { }
+}
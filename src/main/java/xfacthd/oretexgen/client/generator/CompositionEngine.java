@@ -0,0 +1,139 @@
+package xfacthd.oretexgen.client.generator;
+
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import xfacthd.oretexgen.client.OTGConfig;
+import xfacthd.oretexgen.client.util.FrameInfo;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composes ore texture frames in parallel, large single frames are split into bands of rows. The amount of concurrently
+ * composed regions is bounded by {@link OTGConfig#COMPOSE_PARALLELISM}.
+ */
+public final class CompositionEngine
+{
+    private static final int MIN_BANDED_SIZE = 256;
+    private static final int MIN_BAND_ROWS = 64;
+    private static ForkJoinPool pool = null;
+
+    /**
+     * Runs the given consumer for every region of the given frames and returns once all of them have been processed.
+     */
+    public static void forEachRegion(List<FrameInfo> frames, FrameSize frameSize, RegionConsumer consumer)
+    {
+        List<Region> regions = collectRegions(frames, frameSize);
+        int parallelism = OTGConfig.COMPOSE_PARALLELISM;
+        if (regions.size() == 1 || parallelism <= 1)
+        {
+            regions.forEach(region -> consumer.accept(region.frame, region.startY, region.endY));
+            return;
+        }
+
+        int granularity = Math.max(1, regions.size() / parallelism);
+        RegionTask task = new RegionTask(regions, 0, regions.size(), granularity, consumer);
+        if (ForkJoinTask.inForkJoinPool())
+        {
+            task.invoke();
+        }
+        else
+        {
+            getPool().invoke(task);
+        }
+    }
+
+    private static List<Region> collectRegions(List<FrameInfo> frames, FrameSize frameSize)
+    {
+        // Animations may reference the same frame several times, composing it concurrently would race
+        Set<FrameInfo> uniqueFrames = new LinkedHashSet<>(frames);
+        int height = frameSize.height();
+
+        List<Region> regions = new ArrayList<>();
+        if (uniqueFrames.size() == 1 && frameSize.width() >= MIN_BANDED_SIZE && height >= MIN_BANDED_SIZE)
+        {
+            FrameInfo frame = uniqueFrames.iterator().next();
+            int bands = Math.max(1, Math.min(OTGConfig.COMPOSE_PARALLELISM, height / MIN_BAND_ROWS));
+            for (int band = 0; band < bands; band++)
+            {
+                regions.add(new Region(frame, height * band / bands, height * (band + 1) / bands));
+            }
+        }
+        else
+        {
+            uniqueFrames.forEach(frame -> regions.add(new Region(frame, 0, height)));
+        }
+        return regions;
+    }
+
+    private static synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+        {
+            AtomicInteger count = new AtomicInteger(0);
+            pool = new ForkJoinPool(OTGConfig.COMPOSE_PARALLELISM, p ->
+            {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("OreTexGen-Compose-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        }
+        return pool;
+    }
+
+
+
+    @FunctionalInterface
+    public interface RegionConsumer
+    {
+        /**
+         * Processes the rows from {@code startY} (inclusive) to {@code endY} (exclusive), relative to the frame origin.
+         */
+        void accept(FrameInfo frame, int startY, int endY);
+    }
+
+    private record Region(FrameInfo frame, int startY, int endY) { }
+
+    private static final class RegionTask extends RecursiveAction
+    {
+        private final List<Region> regions;
+        private final int start;
+        private final int end;
+        private final int granularity;
+        private final RegionConsumer consumer;
+
+        private RegionTask(List<Region> regions, int start, int end, int granularity, RegionConsumer consumer)
+        {
+            this.regions = regions;
+            this.start = start;
+            this.end = end;
+            this.granularity = granularity;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (end - start <= granularity)
+            {
+                for (int i = start; i < end; i++)
+                {
+                    Region region = regions.get(i);
+                    consumer.accept(region.frame, region.startY, region.endY);
+                }
+                return;
+            }
+
+            int mid = (start + end) >>> 1;
+            invokeAll(
+                    new RegionTask(regions, start, mid, granularity, consumer),
+                    new RegionTask(regions, mid, end, granularity, consumer)
+            );
+        }
+    }
+
+
+
+    private CompositionEngine() { }
+}
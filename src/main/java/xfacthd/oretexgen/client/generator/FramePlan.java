@@ -0,0 +1,103 @@
+package xfacthd.oretexgen.client.generator;
+
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+
+import java.util.*;
+
+/**
+ * Determines which frames of an ore texture need to be composed, repeated and identical frames are copied afterwards.
+ *
+ * @param unique      the frames to compose
+ * @param copies      frames whose result is copied from the frame they map to after composition
+ * @param repeated    the amount of frame entries skipped because their index was already present
+ * @param identical   the amount of frames skipped because their ore pixels match another frame
+ */
+public record FramePlan(List<FrameInfo> unique, Map<FrameInfo, FrameInfo> copies, int repeated, int identical)
+{
+    public static FramePlan create(PixelView image, int scale, FrameSize size, List<FrameInfo> frames, boolean byContent)
+    {
+        Map<Integer, FrameInfo> byIndex = new LinkedHashMap<>();
+        for (FrameInfo frame : frames)
+        {
+            byIndex.putIfAbsent(frame.index(), frame);
+        }
+        int repeated = frames.size() - byIndex.size();
+
+        if (!byContent || byIndex.size() == 1)
+        {
+            return new FramePlan(List.copyOf(byIndex.values()), Map.of(), repeated, 0);
+        }
+
+        int w = size.width() / scale;
+        int h = size.height() / scale;
+        int[] rowA = new int[w];
+        int[] rowB = new int[w];
+
+        List<FrameInfo> unique = new ArrayList<>();
+        Map<FrameInfo, FrameInfo> copies = new LinkedHashMap<>();
+        Map<Long, List<FrameInfo>> byHash = new HashMap<>();
+        for (FrameInfo frame : byIndex.values())
+        {
+            long hash = hashFrame(image, frame, scale, w, h, rowA);
+            List<FrameInfo> candidates = byHash.computeIfAbsent(hash, k -> new ArrayList<>(1));
+
+            FrameInfo source = null;
+            for (FrameInfo candidate : candidates)
+            {
+                if (framesEqual(image, candidate, frame, scale, w, h, rowA, rowB))
+                {
+                    source = candidate;
+                    break;
+                }
+            }
+
+            if (source != null)
+            {
+                copies.put(frame, source);
+            }
+            else
+            {
+                candidates.add(frame);
+                unique.add(frame);
+            }
+        }
+        return new FramePlan(unique, copies, repeated, copies.size());
+    }
+
+    public int skipped()
+    {
+        return repeated + identical;
+    }
+
+    private static long hashFrame(PixelView image, FrameInfo frame, int scale, int w, int h, int[] row)
+    {
+        long hash = 1125899906842597L;
+        for (int y = 0; y < h; y++)
+        {
+            image.readRow(frame.x() / scale, frame.y() / scale + y, w, row, 0);
+            for (int x = 0; x < w; x++)
+            {
+                hash = 31L * hash + row[x];
+            }
+        }
+        return hash;
+    }
+
+    private static boolean framesEqual(
+            PixelView image, FrameInfo a, FrameInfo b, int scale, int w, int h, int[] rowA, int[] rowB
+    )
+    {
+        for (int y = 0; y < h; y++)
+        {
+            image.readRow(a.x() / scale, a.y() / scale + y, w, rowA, 0);
+            image.readRow(b.x() / scale, b.y() / scale + y, w, rowB, 0);
+            if (!Arrays.equals(rowA, 0, w, rowB, 0, w))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
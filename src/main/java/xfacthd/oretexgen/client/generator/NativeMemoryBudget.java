@@ -0,0 +1,119 @@
+package xfacthd.oretexgen.client.generator;
+
+import xfacthd.oretexgen.client.OTGConfig;
+
+/**
+ * Bounds the native memory held by concurrently generated ore textures to {@link OTGConfig#NATIVE_MEMORY_BUDGET}.
+ * A reservation is always admitted if nothing else is reserved, such that larger textures are still generated.
+ */
+public final class NativeMemoryBudget
+{
+    private static final Object LOCK = new Object();
+    private static long reserved = 0; // Guarded by LOCK
+
+    /**
+     * Reserves the given amount of bytes, blocking until they fit into the budget.
+     */
+    public static Reservation reserve(long bytes)
+    {
+        synchronized (LOCK)
+        {
+            // Waiting without compensation, spare loader threads would only start further textures instead of waiting
+            while (!tryAdmit(bytes))
+            {
+                try
+                {
+                    LOCK.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for native memory budget", e);
+                }
+            }
+            return new Reservation(bytes, reserved);
+        }
+    }
+
+    /**
+     * Reserves the whole budget, blocking until nothing else is reserved.
+     */
+    public static Reservation reserveAll()
+    {
+        return reserve(getLimit());
+    }
+
+    public static long getLimit()
+    {
+        return OTGConfig.NATIVE_MEMORY_BUDGET;
+    }
+
+    private static boolean tryAdmit(long bytes)
+    {
+        long limit = getLimit();
+        if (limit > 0L && reserved > 0L && reserved + bytes > limit)
+        {
+            return false;
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    private static void release(long bytes)
+    {
+        synchronized (LOCK)
+        {
+            reserved -= bytes;
+            LOCK.notifyAll();
+        }
+    }
+
+
+
+    public static final class Reservation implements AutoCloseable
+    {
+        private long bytes;
+        private final long total;
+        private boolean released = false;
+
+        private Reservation(long bytes, long total)
+        {
+            this.bytes = bytes;
+            this.total = total;
+        }
+
+        /**
+         * Returns the amount of bytes reserved by all reservations right after this one was admitted.
+         */
+        public long getTotal()
+        {
+            return total;
+        }
+
+        /**
+         * Reduces this reservation to the given amount of bytes, larger amounts keep the current reservation.
+         */
+        public void shrink(long bytes)
+        {
+            if (!released && bytes < this.bytes)
+            {
+                release(this.bytes - bytes);
+                this.bytes = bytes;
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            if (!released)
+            {
+                released = true;
+                release(bytes);
+            }
+        }
+    }
+
+
+
+    private NativeMemoryBudget() { }
+}
@@ -0,0 +1,466 @@
+package xfacthd.oretexgen.client.generator;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.OTGConfig;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.metrics.GenerationMetrics;
+import xfacthd.oretexgen.client.shadow.Palette;
+import xfacthd.oretexgen.client.shadow.ShadowGenerator;
+import xfacthd.oretexgen.client.shadow.ShadowRows;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Composes ore textures onto their background. Independent of the sprite loading pipeline so it can be driven by the
+ * atlas sprite sources as well as by tooling outside the game.
+ */
+public final class OreCompositor
+{
+    /**
+     * Composes every frame of the given ore image onto the background and returns the resulting image.
+     * The ore and background images are left untouched and remain owned by the caller.
+     */
+    public static NativeImage buildCombinedTexture(
+            ResourceLocation name,
+            FrameSize resultSize,
+            NativeImage image,
+            NativeImage background,
+            @Nullable Palette palette,
+            @Nullable ShadowMetadata shadowMetadata,
+            AnimationMetadataSection animation
+    )
+    {
+        return buildCombinedTexture(name, resultSize, image, 1, background, 1, palette, shadowMetadata, animation, null);
+    }
+
+    /**
+     * Composes every frame of the given ore image onto the background, both upscaled by the given factors, and records
+     * the frame count and timings in the given metrics if present. The inputs remain owned by the caller.
+     */
+    public static NativeImage buildCombinedTexture(
+            ResourceLocation name,
+            FrameSize resultSize,
+            NativeImage image,
+            int imageScale,
+            NativeImage background,
+            int backgroundScale,
+            @Nullable Palette palette,
+            @Nullable ShadowMetadata shadowMetadata,
+            AnimationMetadataSection animation,
+            @Nullable GenerationMetrics metrics
+    )
+    {
+        return buildCombinedTexture(
+                name, resultSize, image, imageScale, background, backgroundScale, palette, shadowMetadata, List.of(), animation, metrics
+        );
+    }
+
+    /**
+     * Composes every frame of the given ore image onto the background with the given overlays on top of the ore in
+     * order, the shadow of each overlay shades the layers below it.
+     */
+    public static NativeImage buildCombinedTexture(
+            ResourceLocation name,
+            FrameSize resultSize,
+            NativeImage image,
+            int imageScale,
+            NativeImage background,
+            int backgroundScale,
+            @Nullable Palette palette,
+            @Nullable ShadowMetadata shadowMetadata,
+            List<Overlay> overlays,
+            AnimationMetadataSection animation,
+            @Nullable GenerationMetrics metrics
+    )
+    {
+        int width = image.getWidth() * imageScale;
+        int height = image.getHeight() * imageScale;
+        NativeImage resultImage = new NativeImage(image.format(), width, height, false);
+        try
+        {
+            List<FrameInfo> frames = Utils.collectFrames(width, height, resultSize, animation);
+            if (metrics != null)
+            {
+                metrics.setFrames(frames.size());
+            }
+            if (OTGConfig.REFERENCE_KERNELS)
+            {
+                // The reference kernels only operate on materialized images
+                NativeImage refImage = materialize(image, imageScale, metrics);
+                NativeImage refBackground = materialize(background, backgroundScale, metrics);
+                NativeImage shadowImage = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? image : refImage;
+                int shadowScale = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? imageScale : 1;
+                List<NativeImage> refOverlays = new ArrayList<>(overlays.size());
+                try
+                {
+                    for (Overlay overlay : overlays)
+                    {
+                        refOverlays.add(materialize(overlay.image(), overlay.scale(), metrics));
+                    }
+                    CompositionEngine.forEachRegion(frames, resultSize, (frame, startY, endY) ->
+                    {
+                        composeRegionReference(
+                                frame, startY, endY, resultSize, refImage, shadowImage, shadowScale, refBackground, resultImage,
+                                palette, shadowMetadata, metrics
+                        );
+                        for (int i = 0; i < overlays.size(); i++)
+                        {
+                            composeOverlayReference(
+                                    frame, startY, endY, resultSize, refOverlays.get(i), overlays.get(i), resultImage, metrics
+                            );
+                        }
+                    });
+                }
+                finally
+                {
+                    if (refImage != image)
+                    {
+                        refImage.close();
+                    }
+                    if (refBackground != background)
+                    {
+                        refBackground.close();
+                    }
+                    for (int i = 0; i < refOverlays.size(); i++)
+                    {
+                        if (refOverlays.get(i) != overlays.get(i).image())
+                        {
+                            refOverlays.get(i).close();
+                        }
+                    }
+                }
+            }
+            else
+            {
+                PixelView nativeImageView = PixelView.of(image);
+                PixelView imageView = nativeImageView.scaled(imageScale);
+                PixelView shadowView = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? nativeImageView : imageView;
+                int shadowScale = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? imageScale : 1;
+                PixelView backgroundView = PixelView.of(background).scaled(backgroundScale);
+                PixelView resultView = PixelView.of(resultImage);
+
+                // Identical ore frames may still differ in animated overlays
+                boolean byContent = OTGConfig.DEDUPLICATE_FRAMES && overlays.stream().noneMatch(Overlay::animated);
+                FramePlan plan = FramePlan.create(nativeImageView, imageScale, resultSize, frames, byContent);
+                if (plan.skipped() > 0)
+                {
+                    OreTextureGenerator.LOGGER.debug(
+                            "Skipped {} of {} frames of ore texture '{}' ({} repeated, {} identical)",
+                            plan.skipped(), frames.size(), name, plan.repeated(), plan.identical()
+                    );
+                }
+
+                CompositionEngine.forEachRegion(plan.unique(), resultSize, (frame, startY, endY) -> composeRegion(
+                        frame, startY, endY, resultSize, imageView, shadowView, shadowScale, backgroundView, resultView,
+                        palette, shadowMetadata, overlays, metrics
+                ));
+                plan.copies().forEach((copy, source) -> PixelView.copyRect(
+                        resultView, source.x(), source.y(), resultView, copy.x(), copy.y(), resultSize.width(), resultSize.height()
+                ));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            resultImage.close();
+            throw e;
+        }
+
+        return resultImage;
+    }
+
+    /**
+     * Estimates the peak native memory in bytes held while composing an ore image of the given size onto a background.
+     */
+    public static long estimateNativeMemory(
+            int imageWidth, int imageHeight, int imageScale, int backgroundWidth, int backgroundHeight, int backgroundScale
+    )
+    {
+        long image = (long) imageWidth * imageHeight * 4L;
+        long background = (long) backgroundWidth * backgroundHeight * 4L;
+        long result = image * imageScale * imageScale;
+        long total = image + background + result;
+        if (OTGConfig.REFERENCE_KERNELS)
+        {
+            if (imageScale > 1)
+            {
+                total += result;
+            }
+            if (backgroundScale > 1)
+            {
+                total += background * backgroundScale * backgroundScale;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Estimates the additional native memory in bytes held while composing an overlay image of the given size.
+     */
+    public static long estimateOverlayMemory(int overlayWidth, int overlayHeight, int overlayScale)
+    {
+        long overlay = (long) overlayWidth * overlayHeight * 4L;
+        if (OTGConfig.REFERENCE_KERNELS && overlayScale > 1)
+        {
+            return overlay + overlay * overlayScale * overlayScale;
+        }
+        return overlay;
+    }
+
+    private static NativeImage materialize(NativeImage image, int scale, @Nullable GenerationMetrics metrics)
+    {
+        if (scale <= 1)
+        {
+            return image;
+        }
+
+        long start = System.nanoTime();
+        NativeImage scaled = Utils.copyScaled(image, scale);
+        if (metrics != null)
+        {
+            metrics.addScaleTime(System.nanoTime() - start);
+            metrics.addTemporaryImage(scaled);
+        }
+        return scaled;
+    }
+
+
+
+    /**
+     * Composes the rows from {@code startY} to {@code endY} (exclusive) of the given frame in a single pass, producing
+     * the same pixels as {@link #composeRegionReference}.
+     */
+    private static void composeRegion(
+            FrameInfo frame,
+            int startY,
+            int endY,
+            FrameSize resultSize,
+            PixelView image,
+            PixelView shadowImage,
+            int shadowScale,
+            PixelView background,
+            PixelView resultImage,
+            @Nullable Palette palette,
+            @Nullable ShadowMetadata shadowMetadata,
+            List<Overlay> overlays,
+            @Nullable GenerationMetrics metrics
+    )
+    {
+        int fx = frame.x();
+        int fy = frame.y();
+        int width = resultSize.width();
+
+        // The ore is the first layer, followed by the overlays in order
+        int layerCount = 1 + overlays.size();
+        PixelView[] layers = new PixelView[layerCount];
+        FrameInfo[] layerFrames = new FrameInfo[layerCount];
+        PixelView[] shadowLayers = new PixelView[layerCount];
+        int[] shadowScales = new int[layerCount];
+        ShadowRows[] shadows = new ShadowRows[layerCount];
+        layers[0] = image;
+        layerFrames[0] = frame;
+        shadowLayers[0] = shadowImage;
+        shadowScales[0] = shadowScale;
+        for (int i = 1; i < layerCount; i++)
+        {
+            Overlay overlay = overlays.get(i - 1);
+            PixelView overlayView = PixelView.of(overlay.image());
+            layers[i] = overlayView.scaled(overlay.scale());
+            layerFrames[i] = overlay.frameOf(frame);
+            shadowLayers[i] = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? overlayView : layers[i];
+            shadowScales[i] = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? overlay.scale() : 1;
+        }
+
+        boolean shaded = false;
+        long prepareTime = 0L;
+        for (int i = 0; i < layerCount; i++)
+        {
+            Palette layerPalette = i == 0 ? palette : overlays.get(i - 1).palette();
+            ShadowMetadata layerShadow = i == 0 ? shadowMetadata : overlays.get(i - 1).shadowMetadata();
+            if (layerShadow != null && layerPalette != null)
+            {
+                long start = System.nanoTime();
+                shadows[i] = ShadowGenerator.prepareRows(
+                        shadowLayers[i], layerPalette, layerFrames[i], resultSize, layerShadow, startY, endY, shadowScales[i]
+                );
+                prepareTime += System.nanoTime() - start;
+                shaded = true;
+            }
+        }
+
+        long shadeTime = 0L;
+        long start = System.nanoTime();
+        int[] row = new int[width];
+        int[] oreRow = new int[width];
+        for (int y = startY; y < endY; y++)
+        {
+            background.readRow(0, y, width, row, 0);
+            for (int i = 0; i < layerCount; i++)
+            {
+                ShadowRows shadow = shadows[i];
+                if (shadow != null)
+                {
+                    long shadeStart = metrics != null ? System.nanoTime() : 0L;
+                    shadow.shade(y, row);
+                    if (metrics != null)
+                    {
+                        shadeTime += System.nanoTime() - shadeStart;
+                    }
+                }
+                FrameInfo layerFrame = layerFrames[i];
+                layers[i].readRow(layerFrame.x(), layerFrame.y() + y, width, oreRow, 0);
+                Utils.blendRow(oreRow, row, width);
+            }
+            resultImage.writeRow(fx, fy + y, width, row, 0);
+        }
+
+        if (metrics != null)
+        {
+            if (shaded)
+            {
+                metrics.addShadowTime(prepareTime + shadeTime);
+            }
+            metrics.addBlendTime(System.nanoTime() - start - shadeTime);
+        }
+    }
+
+    /**
+     * Per-pixel implementation of {@link #composeRegion} to verify the optimized kernels against.
+     */
+    private static void composeRegionReference(
+            FrameInfo frame,
+            int startY,
+            int endY,
+            FrameSize resultSize,
+            NativeImage image,
+            NativeImage shadowImage,
+            int shadowScale,
+            NativeImage background,
+            NativeImage resultImage,
+            @Nullable Palette palette,
+            @Nullable ShadowMetadata shadowMetadata,
+            @Nullable GenerationMetrics metrics
+    )
+    {
+        int fx = frame.x();
+        int fy = frame.y();
+        int rows = endY - startY;
+
+        long start = System.nanoTime();
+        background.copyRect(resultImage, 0, startY, fx, fy + startY, resultSize.width(), rows, false, false);
+        long blendTime = System.nanoTime() - start;
+
+        if (shadowMetadata != null && palette != null)
+        {
+            start = System.nanoTime();
+            ShadowGenerator.generateShadow(
+                    resultImage, shadowImage, background, palette, frame, resultSize, shadowMetadata, startY, endY, shadowScale
+            );
+            if (metrics != null)
+            {
+                metrics.addShadowTime(System.nanoTime() - start);
+            }
+        }
+
+        start = System.nanoTime();
+        Utils.copyRect(image, resultImage, fx, fy + startY, fx, fy + startY, resultSize.width(), rows);
+        if (metrics != null)
+        {
+            metrics.addBlendTime(blendTime + System.nanoTime() - start);
+        }
+    }
+
+
+
+    /**
+     * Per-pixel implementation of composing an overlay onto the given rows of a frame of the result.
+     */
+    private static void composeOverlayReference(
+            FrameInfo frame,
+            int startY,
+            int endY,
+            FrameSize resultSize,
+            NativeImage image,
+            Overlay overlay,
+            NativeImage resultImage,
+            @Nullable GenerationMetrics metrics
+    )
+    {
+        int fx = frame.x();
+        int fy = frame.y();
+        int width = resultSize.width();
+        int rows = endY - startY;
+        FrameInfo overlayFrame = overlay.frameOf(frame);
+
+        if (overlay.shadowMetadata() != null && overlay.palette() != null)
+        {
+            long start = System.nanoTime();
+            // The overlay shades the layers below it, which only exist in the result, so both are moved to the origin
+            NativeImage shadowImage = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? overlay.image() : image;
+            int shadowScale = OTGConfig.NATIVE_RESOLUTION_SHADOWS ? overlay.scale() : 1;
+            int fgWidth = width / shadowScale;
+            int fgHeight = resultSize.height() / shadowScale;
+            NativeImage below = new NativeImage(resultImage.format(), width, resultSize.height(), false);
+            NativeImage foreground = new NativeImage(image.format(), fgWidth, fgHeight, false);
+            try
+            {
+                resultImage.copyRect(below, fx, fy + startY, 0, startY, width, rows, false, false);
+                shadowImage.copyRect(
+                        foreground, overlayFrame.x() / shadowScale, overlayFrame.y() / shadowScale, 0, 0, fgWidth, fgHeight, false, false
+                );
+                ShadowGenerator.generateShadow(
+                        below, foreground, below, overlay.palette(), new FrameInfo(frame.index(), 0, 0), resultSize,
+                        overlay.shadowMetadata(), startY, endY, shadowScale
+                );
+                below.copyRect(resultImage, 0, startY, fx, fy + startY, width, rows, false, false);
+            }
+            finally
+            {
+                below.close();
+                foreground.close();
+            }
+            if (metrics != null)
+            {
+                metrics.addShadowTime(System.nanoTime() - start);
+            }
+        }
+
+        long start = System.nanoTime();
+        Utils.copyRect(image, resultImage, overlayFrame.x(), overlayFrame.y() + startY, fx, fy + startY, width, rows);
+        if (metrics != null)
+        {
+            metrics.addBlendTime(System.nanoTime() - start);
+        }
+    }
+
+
+
+    /**
+     * An image composed on top of the ore, upscaled by the given factor. Overlays which aren't animated are composed
+     * onto every frame of the ore.
+     *
+     * @param palette        the palette of the background for the overlay's shadow, {@code null} if it has no shadow
+     * @param shadowMetadata the shadow settings of the overlay, {@code null} represents no shadow generation
+     */
+    public record Overlay(
+            NativeImage image, int scale, boolean animated, @Nullable Palette palette, @Nullable ShadowMetadata shadowMetadata
+    )
+    {
+        FrameInfo frameOf(FrameInfo frame)
+        {
+            return animated ? frame : new FrameInfo(frame.index(), 0, 0);
+        }
+    }
+
+
+
+    private OreCompositor() { }
+}
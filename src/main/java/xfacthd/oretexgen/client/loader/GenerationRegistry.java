@@ -0,0 +1,153 @@
+package xfacthd.oretexgen.client.loader;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.client.cache.DiskTextureCache;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registry of ore texture generation jobs, identical jobs receive a copy of the result of the first one. An entry only
+ * lives while at least one of its jobs is registered, later identical jobs generate the texture again.
+ */
+final class GenerationRegistry
+{
+    private static final Map<Key, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    static Job register(
+            ResourceIndex.Texture ore,
+            ResourceIndex.Texture background,
+            @Nullable ShadowMetadata shadow,
+            List<OreTextureSource.ResolvedLayer> layers
+    )
+    {
+        Key key = new Key(ore, background, shadow, layers.stream().map(l -> new LayerKey(l.texture(), l.shadow())).toList());
+        Entry entry = ENTRIES.compute(key, (k, e) ->
+        {
+            if (e == null)
+            {
+                e = new Entry();
+            }
+            e.refCount++;
+            return e;
+        });
+        return new Job(key, entry);
+    }
+
+    private static void release(Key key)
+    {
+        ENTRIES.computeIfPresent(key, (k, e) ->
+        {
+            e.refCount--;
+            if (e.refCount > 0)
+            {
+                return e;
+            }
+            e.close();
+            return null;
+        });
+    }
+
+
+
+    static final class Job
+    {
+        private final Key key;
+        private final Entry entry;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        private boolean owner = false;
+
+        private Job(Key key, Entry entry)
+        {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * Returns the result of an identical job, or an empty optional if this job has to generate it. The result is
+         * owned by the registry and must be copied before this job is released.
+         */
+        Optional<DiskTextureCache.CachedTexture> awaitShared()
+        {
+            if (entry.claimed.compareAndSet(false, true))
+            {
+                owner = true;
+                return Optional.empty();
+            }
+            // Waiting on the future compensates for blocked workers of the atlas loader's pool
+            return entry.result.join();
+        }
+
+        /**
+         * Publishes a copy of the result of this job to the identical jobs waiting for it.
+         */
+        void publish(NativeImage image, FrameSize frameSize)
+        {
+            if (!owner)
+            {
+                return;
+            }
+            ENTRIES.computeIfPresent(key, (k, e) ->
+            {
+                if (e.refCount > 1 && e.image == null)
+                {
+                    e.image = Utils.copy(image);
+                }
+                return e;
+            });
+            NativeImage shared = entry.image;
+            entry.result.complete(
+                    shared != null ? Optional.of(new DiskTextureCache.CachedTexture(shared, frameSize)) : Optional.empty()
+            );
+        }
+
+        void release()
+        {
+            if (released.compareAndSet(false, true))
+            {
+                if (owner)
+                {
+                    // Unblocks the waiting jobs if this job failed before publishing its result
+                    entry.result.complete(Optional.empty());
+                }
+                GenerationRegistry.release(key);
+            }
+        }
+    }
+
+    private record Key(
+            ResourceIndex.Texture ore, ResourceIndex.Texture background, @Nullable ShadowMetadata shadow, List<LayerKey> layers
+    ) { }
+
+    private record LayerKey(ResourceIndex.Texture texture, @Nullable ShadowMetadata shadow) { }
+
+    private static final class Entry
+    {
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private final CompletableFuture<Optional<DiskTextureCache.CachedTexture>> result = new CompletableFuture<>();
+        private NativeImage image = null; // Guarded by ENTRIES.compute()
+        private int refCount = 0; // Guarded by ENTRIES.compute()
+
+        private void close()
+        {
+            // Complete waiting jobs before freeing the image, none can be left at this point
+            result.complete(Optional.empty());
+            if (image != null)
+            {
+                image.close();
+                image = null;
+            }
+        }
+    }
+
+
+
+    private GenerationRegistry() { }
+}
@@ -0,0 +1,200 @@
+package xfacthd.oretexgen.client.loader;
+
+import com.google.common.base.Preconditions;
+import com.mojang.datafixers.util.Either;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import net.minecraft.client.renderer.texture.atlas.SpriteSource;
+import net.minecraft.client.renderer.texture.atlas.SpriteSourceType;
+import net.minecraft.client.renderer.texture.atlas.SpriteSources;
+import net.minecraft.client.renderer.texture.atlas.sources.LazyLoadedImage;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.util.ExtraCodecs;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.cache.BackgroundCache;
+import xfacthd.oretexgen.client.metrics.GenerationReport;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.*;
+
+/**
+ * Generates every combination of a list of ore textures and a list of background textures, decoding each texture once.
+ * Sprite names are built from a template with {@code {ore|background}_{namespace|path|name}} placeholders.
+ */
+public sealed class OreMatrixSource implements SpriteSource permits OreMatrixSourceAV
+{
+    private static final String DEFAULT_TEMPLATE = "{ore_namespace}:{ore_path}_{background_name}";
+    private static SpriteSourceType TYPE = null;
+    private static final Codec<MatrixBackground> BACKGROUND_CODEC = new ExtraCodecs.EitherCodec<>(
+            ResourceLocation.CODEC,
+            RecordCodecBuilder.<MatrixBackground>create(inst -> inst.group(
+                    ResourceLocation.CODEC.fieldOf("texture").forGetter(MatrixBackground::texture),
+                    OreTextureSource.SHADOW_CODEC.forGetter(b -> Optional.ofNullable(b.shadow()))
+            ).apply(inst, (texture, shadow) -> new MatrixBackground(texture, shadow.orElse(null))))
+    ).xmap(
+            e -> e.map(texture -> new MatrixBackground(texture, null), b -> b),
+            b -> b.shadow() == null ? Either.left(b.texture()) : Either.right(b)
+    );
+    public static final Codec<OreMatrixSource> CODEC = RecordCodecBuilder.create(inst -> inst.group(
+            ResourceLocation.CODEC.listOf().fieldOf("ores").forGetter(s -> s.ores),
+            BACKGROUND_CODEC.listOf().fieldOf("backgrounds").forGetter(s -> s.backgrounds),
+            Utils.optionalFieldCodecOf(Codec.STRING, "name", DEFAULT_TEMPLATE).forGetter(s -> s.nameTemplate)
+    ).apply(inst, OreMatrixSource::create));
+
+    final List<ResourceLocation> ores;
+    final List<MatrixBackground> backgrounds;
+    final String nameTemplate;
+
+    public OreMatrixSource(List<ResourceLocation> ores, List<MatrixBackground> backgrounds, String nameTemplate)
+    {
+        this.ores = ores;
+        this.backgrounds = backgrounds;
+        this.nameTemplate = nameTemplate;
+    }
+
+    @Override
+    public void run(ResourceManager manager, Output output)
+    {
+        ResourceIndex index = ResourceIndex.of(manager);
+        List<ResolvedBackground> resolvedBackgrounds = new ArrayList<>();
+        for (MatrixBackground background : backgrounds)
+        {
+            ResourceLocation bgPath = TEXTURE_ID_CONVERTER.idToFile(background.texture());
+            Optional<ResourceIndex.Texture> optBg = index.resolve(bgPath);
+            if (optBg.isEmpty())
+            {
+                OreTextureGenerator.LOGGER.warn("Missing background sprite: {}", bgPath);
+                continue;
+            }
+            resolvedBackgrounds.add(new ResolvedBackground(background, optBg.get()));
+        }
+
+        GenerationReport report = GenerationReport.of(output);
+        Set<ResourceLocation> names = new HashSet<>();
+        for (ResourceLocation ore : ores)
+        {
+            ResourceLocation orePath = TEXTURE_ID_CONVERTER.idToFile(ore);
+            Optional<ResourceIndex.Texture> optOre = index.resolve(orePath);
+            if (optOre.isEmpty())
+            {
+                OreTextureGenerator.LOGGER.warn("Missing ore sprite: {}", orePath);
+                continue;
+            }
+
+            ResourceIndex.Texture oreTexture = optOre.get();
+            Map<ResourceLocation, Combination> outputs = new LinkedHashMap<>();
+            for (ResolvedBackground background : resolvedBackgrounds)
+            {
+                String name = expandTemplate(nameTemplate, ore, background.source().texture());
+                ResourceLocation outLoc = ResourceLocation.tryParse(name);
+                if (outLoc == null)
+                {
+                    OreTextureGenerator.LOGGER.warn("Ore matrix template '{}' produced invalid sprite name '{}'", nameTemplate, name);
+                }
+                else if (!names.add(outLoc))
+                {
+                    OreTextureGenerator.LOGGER.warn("Ore matrix template '{}' produced duplicate sprite name '{}'", nameTemplate, outLoc);
+                }
+                else
+                {
+                    try
+                    {
+                        TextureLayout layout = TextureLayout.probe(oreTexture, background.texture(), List.of(), outLoc).orElse(null);
+                        outputs.put(outLoc, new Combination(background, layout));
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        OreTextureSource.reject(outLoc, output, e);
+                    }
+                }
+            }
+            if (outputs.isEmpty())
+            {
+                continue;
+            }
+
+            // All combinations of this ore share one decoded image which is freed after the last one has been generated
+            LazyLoadedImage lazyOre = new LazyLoadedImage(orePath, oreTexture.resource(), outputs.size());
+            outputs.forEach((outLoc, combination) ->
+            {
+                ResolvedBackground background = combination.background();
+                ResourceIndex.Texture bgTexture = background.texture();
+                BackgroundCache.Handle bgHandle = BackgroundCache.acquire(bgTexture.path(), bgTexture.resource());
+                index.prefetchBackground(bgTexture, background.source().shadow());
+                report.register();
+                output.add(outLoc, createSupplier(index, oreTexture, lazyOre, background, bgHandle, combination.layout(), outLoc, report));
+            });
+        }
+    }
+
+    OreTextureSource.OreTextureSupplier createSupplier(
+            ResourceIndex index,
+            ResourceIndex.Texture oreTexture,
+            LazyLoadedImage lazyOre,
+            ResolvedBackground background,
+            BackgroundCache.Handle bgHandle,
+            @Nullable TextureLayout layout,
+            ResourceLocation outLoc,
+            GenerationReport report
+    )
+    {
+        return new OreTextureSource.OreTextureSupplier(
+                index, oreTexture, lazyOre, background.texture(), bgHandle, List.of(), layout, background.source().shadow(),
+                outLoc, report
+        );
+    }
+
+    @Override
+    public SpriteSourceType type()
+    {
+        return Preconditions.checkNotNull(TYPE, "SpriteSourceType not registered");
+    }
+
+    private static String expandTemplate(String template, ResourceLocation ore, ResourceLocation background)
+    {
+        return template
+                .replace("{ore_namespace}", ore.getNamespace())
+                .replace("{ore_path}", ore.getPath())
+                .replace("{ore_name}", lastSegment(ore))
+                .replace("{background_namespace}", background.getNamespace())
+                .replace("{background_path}", background.getPath())
+                .replace("{background_name}", lastSegment(background));
+    }
+
+    private static String lastSegment(ResourceLocation location)
+    {
+        String path = location.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private static OreMatrixSource create(List<ResourceLocation> ores, List<MatrixBackground> backgrounds, String nameTemplate)
+    {
+        if (OreTextureSource.AV_LOADED)
+        {
+            return new OreMatrixSourceAV(ores, backgrounds, nameTemplate);
+        }
+        return new OreMatrixSource(ores, backgrounds, nameTemplate);
+    }
+
+
+
+    /**
+     * A background of an ore matrix with its shadow settings, {@code null} represents no shadow generation.
+     */
+    public record MatrixBackground(ResourceLocation texture, @Nullable ShadowMetadata shadow) { }
+
+    record ResolvedBackground(MatrixBackground source, ResourceIndex.Texture texture) { }
+
+    private record Combination(ResolvedBackground background, @Nullable TextureLayout layout) { }
+
+
+
+    // TODO: replace with dedicated event when switching to Neo and the event is merged
+    public static void register()
+    {
+        String name = OreTextureGenerator.MODID + ":ore_matrix";
+        TYPE = SpriteSources.register(name, CODEC);
+    }
+}
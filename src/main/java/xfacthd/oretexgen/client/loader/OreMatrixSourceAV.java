@@ -0,0 +1,46 @@
+package xfacthd.oretexgen.client.loader;
+
+import net.minecraft.client.renderer.texture.atlas.sources.LazyLoadedImage;
+import net.minecraft.resources.ResourceLocation;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.atlasviewer.client.api.*;
+import xfacthd.oretexgen.client.cache.BackgroundCache;
+import xfacthd.oretexgen.client.metrics.GenerationReport;
+
+import java.util.List;
+
+final class OreMatrixSourceAV extends OreMatrixSource implements IPackAwareSpriteSource
+{
+    private final SpriteSourceMeta meta = new SpriteSourceMeta();
+
+    OreMatrixSourceAV(List<ResourceLocation> ores, List<MatrixBackground> backgrounds, String nameTemplate)
+    {
+        super(ores, backgrounds, nameTemplate);
+    }
+
+    @Override
+    public SpriteSourceMeta atlasviewer$getMeta()
+    {
+        return meta;
+    }
+
+    @Override
+    OreTextureSource.OreTextureSupplier createSupplier(
+            ResourceIndex index,
+            ResourceIndex.Texture oreTexture,
+            LazyLoadedImage lazyOre,
+            ResolvedBackground background,
+            BackgroundCache.Handle bgHandle,
+            @Nullable TextureLayout layout,
+            ResourceLocation outLoc,
+            GenerationReport report
+    )
+    {
+        OreTextureSourceAV.OreTextureSupplierAV supplier = new OreTextureSourceAV.OreTextureSupplierAV(
+                index, oreTexture, lazyOre, background.texture(), bgHandle, List.of(), layout, background.source().shadow(),
+                outLoc, report
+        );
+        supplier.atlasviewer$getMeta().readFromSpriteSourceMeta(this);
+        return supplier;
+    }
+}
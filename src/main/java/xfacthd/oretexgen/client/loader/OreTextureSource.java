@@ -4,6 +4,7 @@ import com.google.common.base.Preconditions;
 import com.mojang.blaze3d.platform.NativeImage;
 import com.mojang.datafixers.util.Either;
 import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 import net.minecraft.client.renderer.texture.MissingTextureAtlasSprite;
 import net.minecraft.client.renderer.texture.SpriteContents;
@@ -12,52 +13,84 @@ import net.minecraft.client.renderer.texture.atlas.sources.LazyLoadedImage;
 import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
 import net.minecraft.client.resources.metadata.animation.FrameSize;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.server.packs.resources.Resource;
 import net.minecraft.server.packs.resources.ResourceManager;
 import net.minecraft.util.ExtraCodecs;
 import net.minecraftforge.fml.ModList;
 import org.jetbrains.annotations.Nullable;
 import xfacthd.oretexgen.OreTextureGenerator;
-import xfacthd.oretexgen.client.shadow.ShadowGenerator;
+import xfacthd.oretexgen.client.cache.BackgroundCache;
+import xfacthd.oretexgen.client.cache.DiskTextureCache;
+import xfacthd.oretexgen.client.cache.RetainedTextureCache;
+import xfacthd.oretexgen.client.generator.NativeMemoryBudget;
+import xfacthd.oretexgen.client.generator.OreCompositor;
+import xfacthd.oretexgen.client.metrics.GenerationMetrics;
+import xfacthd.oretexgen.client.metrics.GenerationReport;
+import xfacthd.oretexgen.client.shadow.Palette;
+import xfacthd.oretexgen.client.util.ContentHash;
 import xfacthd.oretexgen.client.util.Utils;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 public sealed class OreTextureSource implements SpriteSource permits OreTextureSourceAV
 {
-    private static final boolean AV_LOADED = ModList.get().isLoaded("atlasviewer");
+    // The mod list is not available when running outside the game
+    static final boolean AV_LOADED = ModList.get() != null && ModList.get().isLoaded("atlasviewer");
     private static final ResourceLocation DEFAULT_BACKGROUND = new ResourceLocation("minecraft:block/stone");
     private static SpriteSourceType TYPE = null;
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
     private static final Optional<ShadowMetadata> OPT_DEFAULT_SHADOW = Optional.of(ShadowMetadata.DEFAULT);
-    private static final Codec<OreTextureSource> CODEC = RecordCodecBuilder.create(inst -> inst.group(
+    /** Optional {@code shadow} field, either {@code true} for the default settings or explicit settings. */
+    static final MapCodec<Optional<ShadowMetadata>> SHADOW_CODEC = Utils.optionalFieldCodecOf(
+            new ExtraCodecs.EitherCodec<>(Codec.BOOL, ShadowMetadata.CODEC),
+            "shadow"
+    ).xmap(
+            oe -> oe.flatMap(e -> e.map(b -> b ? OPT_DEFAULT_SHADOW : Optional.empty(), Optional::of)),
+            os -> os.map(s -> s.equals(ShadowMetadata.DEFAULT) ? Either.left(true) : Either.right(s))
+    );
+    private static final Codec<OreLayer> LAYER_CODEC = new ExtraCodecs.EitherCodec<>(
+            ResourceLocation.CODEC,
+            RecordCodecBuilder.<OreLayer>create(inst -> inst.group(
+                    ResourceLocation.CODEC.fieldOf("texture").forGetter(OreLayer::texture),
+                    SHADOW_CODEC.forGetter(l -> Optional.ofNullable(l.shadow()))
+            ).apply(inst, (texture, shadow) -> new OreLayer(texture, shadow.orElse(null))))
+    ).xmap(
+            e -> e.map(texture -> new OreLayer(texture, null), l -> l),
+            l -> l.shadow() == null ? Either.left(l.texture()) : Either.right(l)
+    );
+    public static final Codec<OreTextureSource> CODEC = RecordCodecBuilder.create(inst -> inst.group(
             ResourceLocation.CODEC.fieldOf("ore").forGetter(s -> s.ore),
             Utils.optionalFieldCodecOf(ResourceLocation.CODEC, "background", DEFAULT_BACKGROUND).forGetter(s -> s.background),
-            Utils.optionalFieldCodecOf(
-                    new ExtraCodecs.EitherCodec<>(Codec.BOOL, ShadowMetadata.CODEC),
-                    "shadow"
-            ).xmap(
-                    oe -> oe.flatMap(e -> e.map(b -> b ? OPT_DEFAULT_SHADOW : Optional.empty(), Optional::of)),
-                    os -> os.map(s -> s.equals(ShadowMetadata.DEFAULT) ? Either.left(true) : Either.right(s))
-            ).forGetter(s -> Optional.ofNullable(s.shadow))
-    ).apply(inst, (ore, bg, shadow) -> OreTextureSource.create(ore, bg, shadow.orElse(null))));
+            SHADOW_CODEC.forGetter(s -> Optional.ofNullable(s.shadow)),
+            Utils.optionalFieldCodecOf(LAYER_CODEC.listOf(), "layers", List.of()).forGetter(s -> s.layers)
+    ).apply(inst, (ore, bg, shadow, layers) -> OreTextureSource.create(ore, bg, shadow.orElse(null), layers)));
 
     final ResourceLocation ore;
     final ResourceLocation background;
     final ShadowMetadata shadow;
+    final List<OreLayer> layers;
 
     public OreTextureSource(ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow)
+    {
+        this(ore, background, shadow, List.of());
+    }
+
+    public OreTextureSource(ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow, List<OreLayer> layers)
     {
         this.ore = ore;
         this.background = background;
         this.shadow = shadow;
+        this.layers = layers;
     }
 
     @Override
     public void run(ResourceManager manager, Output output)
     {
+        ResourceIndex index = ResourceIndex.of(manager);
         ResourceLocation orePath = TEXTURE_ID_CONVERTER.idToFile(ore);
-        Optional<Resource> optOre = manager.getResource(orePath);
+        Optional<ResourceIndex.Texture> optOre = index.resolve(orePath);
         if (optOre.isEmpty())
         {
             OreTextureGenerator.LOGGER.warn("Missing ore sprite: {}", orePath);
@@ -65,25 +98,89 @@ public sealed class OreTextureSource implements SpriteSource permits OreTextureS
         }
 
         ResourceLocation bgPath = TEXTURE_ID_CONVERTER.idToFile(background);
-        Optional<Resource> optBg = manager.getResource(bgPath);
+        Optional<ResourceIndex.Texture> optBg = index.resolve(bgPath);
         if (optBg.isEmpty())
         {
-            OreTextureGenerator.LOGGER.warn("Missing background sprite: {}", orePath);
+            OreTextureGenerator.LOGGER.warn("Missing background sprite: {}", bgPath);
+            return;
+        }
+
+        List<ResourceIndex.Texture> layerTextures = new ArrayList<>(layers.size());
+        for (OreLayer layer : layers)
+        {
+            ResourceLocation layerPath = TEXTURE_ID_CONVERTER.idToFile(layer.texture());
+            Optional<ResourceIndex.Texture> optLayer = index.resolve(layerPath);
+            if (optLayer.isEmpty())
+            {
+                OreTextureGenerator.LOGGER.warn("Missing ore layer sprite: {}", layerPath);
+                return;
+            }
+            layerTextures.add(optLayer.get());
+        }
+
+        ResourceIndex.Texture oreTexture = optOre.get();
+        ResourceIndex.Texture bgTexture = optBg.get();
+        TextureLayout layout;
+        try
+        {
+            layout = TextureLayout.probe(oreTexture, bgTexture, layerTextures, ore).orElse(null);
+        }
+        catch (IllegalArgumentException e)
+        {
+            reject(ore, output, e);
             return;
         }
 
-        Resource oreResource = optOre.get();
-        Resource bgResource = optBg.get();
-        LazyLoadedImage lazyOre = new LazyLoadedImage(orePath, oreResource, 1);
-        LazyLoadedImage lazyBg = new LazyLoadedImage(bgPath, bgResource, 1);
-        output.add(ore, createSupplier(oreResource, lazyOre, bgResource, lazyBg));
+        LazyLoadedImage lazyOre = new LazyLoadedImage(orePath, oreTexture.resource(), 1);
+        BackgroundCache.Handle bgHandle = BackgroundCache.acquire(bgPath, bgTexture.resource());
+        index.prefetchBackground(bgTexture, shadow);
+        List<ResolvedLayer> resolvedLayers = new ArrayList<>(layers.size());
+        for (int i = 0; i < layers.size(); i++)
+        {
+            ResourceIndex.Texture layerTexture = layerTextures.get(i);
+            ShadowMetadata layerShadow = layers.get(i).shadow();
+            LazyLoadedImage lazyLayer = new LazyLoadedImage(layerTexture.path(), layerTexture.resource(), 1);
+            resolvedLayers.add(new ResolvedLayer(layerTexture, lazyLayer, layerShadow));
+            if (layerShadow != null)
+            {
+                index.prefetchBackground(bgTexture, layerShadow);
+            }
+        }
+        GenerationReport report = GenerationReport.of(output);
+        report.register();
+        output.add(ore, createSupplier(index, oreTexture, lazyOre, bgTexture, bgHandle, resolvedLayers, layout, report));
     }
 
     OreTextureSupplier createSupplier(
-            Resource oreResource, LazyLoadedImage lazyOre, Resource bgResource, LazyLoadedImage lazyBg
+            ResourceIndex index,
+            ResourceIndex.Texture oreTexture,
+            LazyLoadedImage lazyOre,
+            ResourceIndex.Texture bgTexture,
+            BackgroundCache.Handle bgHandle,
+            List<ResolvedLayer> resolvedLayers,
+            @Nullable TextureLayout layout,
+            GenerationReport report
     )
     {
-        return new OreTextureSupplier(oreResource, lazyOre, background, bgResource, lazyBg, shadow, ore);
+        return new OreTextureSupplier(index, oreTexture, lazyOre, bgTexture, bgHandle, resolvedLayers, layout, shadow, ore, report);
+    }
+
+    /**
+     * Adds the missing texture for a sprite whose ore and background textures can't be combined, such that broken
+     * combinations are rejected before anything is decoded.
+     */
+    static void reject(ResourceLocation outLoc, Output output, IllegalArgumentException cause)
+    {
+        OreTextureGenerator.LOGGER.error("Failed to generate ore texture '{}': {}", outLoc, cause.getMessage());
+        output.add(outLoc, MissingTextureAtlasSprite::create);
+    }
+
+    /**
+     * Returns the animation of the ore texture the given supplier generates from if it is an ore texture supplier.
+     */
+    public static Optional<AnimationMetadataSection> getOreAnimation(SpriteSupplier supplier)
+    {
+        return supplier instanceof OreTextureSupplier oreSupplier ? Optional.of(oreSupplier.ore.animation()) : Optional.empty();
     }
 
     @Override
@@ -92,141 +189,348 @@ public sealed class OreTextureSource implements SpriteSource permits OreTextureS
         return Preconditions.checkNotNull(TYPE, "SpriteSourceType not registered");
     }
 
-    private static OreTextureSource create(ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow)
+    private static OreTextureSource create(
+            ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow, List<OreLayer> layers
+    )
     {
         if (AV_LOADED)
         {
-            return new OreTextureSourceAV(ore, background, shadow);
+            return new OreTextureSourceAV(ore, background, shadow, layers);
         }
-        return new OreTextureSource(ore, background, shadow);
+        return new OreTextureSource(ore, background, shadow, layers);
     }
 
 
 
+    /**
+     * An ore texture composed on top of the ore with its shadow settings, {@code null} represents no shadow
+     * generation. The shadow is computed from the background's palette and shades all layers below it.
+     */
+    public record OreLayer(ResourceLocation texture, @Nullable ShadowMetadata shadow) { }
+
+    /**
+     * A resolved ore layer with its lazily decoded image.
+     */
+    record ResolvedLayer(ResourceIndex.Texture texture, LazyLoadedImage image, @Nullable ShadowMetadata shadow) { }
+
+
+
     static sealed class OreTextureSupplier implements SpriteSupplier permits OreTextureSourceAV.OreTextureSupplierAV
     {
-        final Resource oreResource;
+        private final ResourceIndex index;
+        final ResourceIndex.Texture ore;
         private final LazyLoadedImage lazyOre;
-        private final ResourceLocation background;
-        private final Resource backgroundResource;
-        private final LazyLoadedImage lazyBackground;
+        private final ResourceIndex.Texture background;
+        private final BackgroundCache.Handle backgroundHandle;
+        private final List<ResolvedLayer> layers;
+        @Nullable
+        private final TextureLayout layout;
         private final ShadowMetadata shadow;
         private final ResourceLocation outLoc;
+        private final GenerationReport report;
+        private final GenerationRegistry.Job job;
 
         OreTextureSupplier(
-                Resource oreResource,
+                ResourceIndex index,
+                ResourceIndex.Texture ore,
                 LazyLoadedImage lazyOre,
-                ResourceLocation background,
-                Resource backgroundResource,
-                LazyLoadedImage lazyBackground,
+                ResourceIndex.Texture background,
+                BackgroundCache.Handle backgroundHandle,
+                List<ResolvedLayer> layers,
+                @Nullable TextureLayout layout,
                 ShadowMetadata shadow,
-                ResourceLocation outLoc
+                ResourceLocation outLoc,
+                GenerationReport report
         )
         {
-            this.oreResource = oreResource;
+            this.index = index;
+            this.ore = ore;
             this.lazyOre = lazyOre;
             this.background = background;
-            this.backgroundResource = backgroundResource;
-            this.lazyBackground = lazyBackground;
+            this.backgroundHandle = backgroundHandle;
+            this.layers = layers;
+            this.layout = layout;
             this.shadow = shadow;
             this.outLoc = outLoc;
+            this.report = report;
+            this.job = GenerationRegistry.register(ore, background, shadow, layers);
         }
 
         @Override
         public SpriteContents get()
         {
+            GenerationMetrics metrics = new GenerationMetrics(outLoc, report);
+            NativeMemoryBudget.Reservation reservation = null;
             try
             {
-                AnimationMetadataSection bgAnim = backgroundResource.metadata()
-                        .getSection(AnimationMetadataSection.SERIALIZER)
-                        .orElse(AnimationMetadataSection.EMPTY);
-                if (bgAnim != AnimationMetadataSection.EMPTY)
+                // Animated backgrounds have been rejected when the source was run
+                AnimationMetadataSection bgAnim = background.animation();
+                AnimationMetadataSection oreAnim = ore.animation();
+
+                // Nothing may be reserved while waiting, the job generating the shared result may need the budget
+                Optional<DiskTextureCache.CachedTexture> shared = job.awaitShared();
+                if (shared.isPresent())
                 {
-                    throw new IllegalArgumentException(
-                            "Ore background texture must not be animated but '" + background + "' specifies an animation"
+                    metrics.setCacheResult(GenerationMetrics.CacheResult.SHARED);
+                    NativeImage sharedImage = shared.get().image();
+                    long sharedSize = (long) sharedImage.getWidth() * sharedImage.getHeight() * 4L;
+                    reservation = NativeMemoryBudget.reserve(sharedSize);
+                    metrics.recordReservation(reservation);
+                    DiskTextureCache.CachedTexture copy = new DiskTextureCache.CachedTexture(
+                            Utils.copy(sharedImage), shared.get().frameSize()
                     );
+                    return restore(copy, oreAnim, metrics);
                 }
 
-                NativeImage background = lazyBackground.get();
-                NativeImage image = lazyOre.get();
+                boolean diskCache = DiskTextureCache.isEnabled();
+                boolean retain = RetainedTextureCache.isEnabled();
+                String cacheKey = diskCache || retain ? computeCacheKey(oreAnim, bgAnim) : null;
+                // The disk cache is content-addressed, retained textures also track which packs provided the inputs
+                String fingerprint = retain ? computeFingerprint(cacheKey) : null;
+                if (cacheKey != null)
+                {
+                    // Without a probed layout the size of a cached texture is unknown, the whole budget is held instead
+                    if (layout != null)
+                    {
+                        reservation = NativeMemoryBudget.reserve(layout.estimateRestoreMemory());
+                    }
+                    else
+                    {
+                        reservation = NativeMemoryBudget.reserveAll();
+                    }
+                    metrics.recordReservation(reservation);
+                }
+                if (fingerprint != null)
+                {
+                    Optional<DiskTextureCache.CachedTexture> retained = RetainedTextureCache.load(outLoc, fingerprint);
+                    if (retained.isPresent())
+                    {
+                        metrics.setCacheResult(GenerationMetrics.CacheResult.RETAINED);
+                        storeResult(null, null, retained.get().image(), retained.get().frameSize());
+                        return restore(retained.get(), oreAnim, metrics);
+                    }
+                }
+                if (diskCache)
+                {
+                    Optional<DiskTextureCache.CachedTexture> cached = DiskTextureCache.load(cacheKey);
+                    metrics.setCacheResult(cached.isPresent() ? GenerationMetrics.CacheResult.HIT : GenerationMetrics.CacheResult.MISS);
+                    if (cached.isPresent())
+                    {
+                        DiskTextureCache.CachedTexture texture = cached.get();
+                        storeResult(null, fingerprint, texture.image(), texture.frameSize());
+                        return restore(texture, oreAnim, metrics);
+                    }
+                }
+                else if (retain)
+                {
+                    metrics.setCacheResult(GenerationMetrics.CacheResult.MISS);
+                }
 
-                AnimationMetadataSection oreAnim = oreResource.metadata()
-                        .getSection(AnimationMetadataSection.SERIALIZER)
-                        .orElse(AnimationMetadataSection.EMPTY);
-                FrameSize size = oreAnim.calculateFrameSize(image.getWidth(), image.getHeight());
+                // Neither cache can serve this texture, the remaining backgrounds are likely needed as well
+                index.onCacheMiss();
+
+                // The layout probed from the headers allows reserving memory before anything is decoded, the whole
+                // budget is held while decoding otherwise
+                boolean staged = cacheKey != null;
+                TextureLayout textureLayout = layout;
+                if (textureLayout != null)
+                {
+                    if (reservation != null)
+                    {
+                        reservation.close();
+                    }
+                    reservation = NativeMemoryBudget.reserve(textureLayout.estimateNativeMemory(staged));
+                    metrics.recordReservation(reservation);
+                }
+                else if (reservation == null)
+                {
+                    reservation = NativeMemoryBudget.reserveAll();
+                    metrics.recordReservation(reservation);
+                }
+
+                long start = System.nanoTime();
+                NativeImage background = backgroundHandle.getImage();
+                NativeImage image = lazyOre.get();
+                List<NativeImage> layerImages = new ArrayList<>(layers.size());
+                for (ResolvedLayer layer : layers)
+                {
+                    NativeImage layerImage = layer.image().get();
+                    metrics.addTemporaryImage(layerImage);
+                    layerImages.add(layerImage);
+                }
+                metrics.addDecodeTime(System.nanoTime() - start);
+                metrics.addTemporaryImage(image);
 
                 int bgWidth = background.getWidth();
                 int bgHeight = background.getHeight();
-                int fgWidth = size.width();
-                int fgHeight = size.height();
-                if (!Utils.checkAspectRatio(bgWidth, bgHeight, fgWidth, fgHeight))
+                if (textureLayout == null)
                 {
-                    throw new IllegalArgumentException(
-                            "Aspect ratio of ore and background texture does not match for texture '" + outLoc + "'"
+                    textureLayout = TextureLayout.compute(oreAnim, image.getWidth(), image.getHeight(), bgWidth, bgHeight, outLoc);
+                    List<TextureLayout.OverlayLayout> overlayLayouts = new ArrayList<>(layers.size());
+                    for (int i = 0; i < layers.size(); i++)
+                    {
+                        ResourceIndex.Texture texture = layers.get(i).texture();
+                        NativeImage layerImage = layerImages.get(i);
+                        overlayLayouts.add(textureLayout.computeOverlay(
+                                texture.path(), texture.animation(), layerImage.getWidth(), layerImage.getHeight(), outLoc
+                        ));
+                    }
+                    textureLayout = textureLayout.withOverlays(overlayLayouts);
+                    reservation.shrink(textureLayout.estimateNativeMemory(staged));
+                }
+                else if (!textureLayout.matches(image.getWidth(), image.getHeight(), bgWidth, bgHeight) || !matchesLayers(textureLayout, layerImages))
+                {
+                    throw new IllegalStateException(
+                            "Decoded ore, layer or background texture size does not match PNG header for texture '" + outLoc + "'"
                     );
                 }
 
-                FrameSize resultSize = new FrameSize(Math.max(bgWidth, fgWidth), Math.max(bgHeight, fgHeight));
-                int bgScale = fgWidth > bgWidth ? (fgWidth / bgWidth) : 1;
-                int fgScale = bgWidth > fgWidth ? (bgWidth / fgWidth) : 1;
-                background = Utils.scaleImage(background, bgScale);
-                image = Utils.scaleImage(image, fgScale);
-                return postProcess(buildCombinedTexture(outLoc, resultSize, image, background, shadow, oreAnim));
+                FrameSize resultSize = textureLayout.resultSize();
+                int fgScale = textureLayout.oreScale();
+                int bgScale = textureLayout.backgroundScale();
+
+                start = System.nanoTime();
+                Palette palette = shadow != null ? backgroundHandle.getPalette(shadow.paletteExpansion()) : null;
+                metrics.addShadowTime(System.nanoTime() - start);
+                metrics.setPaletteSize(palette != null ? palette.size() : 0);
+                metrics.setFrameSize(resultSize);
+
+                List<OreCompositor.Overlay> overlays = new ArrayList<>(layers.size());
+                for (int i = 0; i < layers.size(); i++)
+                {
+                    ShadowMetadata layerShadow = layers.get(i).shadow();
+                    TextureLayout.OverlayLayout overlayLayout = textureLayout.overlays().get(i);
+                    start = System.nanoTime();
+                    Palette layerPalette = layerShadow != null ? backgroundHandle.getPalette(layerShadow.paletteExpansion()) : null;
+                    metrics.addShadowTime(System.nanoTime() - start);
+                    overlays.add(new OreCompositor.Overlay(
+                            layerImages.get(i), overlayLayout.scale(), overlayLayout.animated(), layerPalette, layerShadow
+                    ));
+                }
+
+                NativeImage resultImage = OreCompositor.buildCombinedTexture(
+                        outLoc, resultSize, image, fgScale, background, bgScale, palette, shadow, overlays, oreAnim, metrics
+                );
+                metrics.addResultImage(resultImage);
+                storeResult(diskCache ? cacheKey : null, fingerprint, resultImage, resultSize);
+                return postProcess(new SpriteContents(outLoc, resultSize, resultImage, oreAnim, null));
             }
             catch (Exception e)
             {
                 OreTextureGenerator.LOGGER.error("Failed to generate ore texture '{}'", outLoc, e);
+                metrics.markFailed();
             }
             finally
             {
+                if (reservation != null)
+                {
+                    reservation.close();
+                }
                 lazyOre.release();
-                lazyBackground.release();
+                layers.forEach(layer -> layer.image().release());
+                backgroundHandle.release();
+                job.release();
+                metrics.finish();
             }
             return MissingTextureAtlasSprite.create();
         }
 
-        SpriteContents postProcess(SpriteContents contents)
+        /**
+         * Stores the given texture in the given caches and shares it with identical jobs, failures only affect caching.
+         */
+        private void storeResult(@Nullable String cacheKey, @Nullable String fingerprint, NativeImage image, FrameSize frameSize)
         {
-            return contents;
+            try
+            {
+                if (cacheKey != null)
+                {
+                    DiskTextureCache.store(cacheKey, image, frameSize);
+                }
+                if (fingerprint != null)
+                {
+                    RetainedTextureCache.store(outLoc, fingerprint, image, frameSize);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                OreTextureGenerator.LOGGER.warn("Failed to cache ore texture '{}'", outLoc, e);
+            }
+
+            try
+            {
+                job.publish(image, frameSize);
+            }
+            catch (RuntimeException e)
+            {
+                // Identical jobs generate the texture themselves once this job is released
+                OreTextureGenerator.LOGGER.warn("Failed to share ore texture '{}'", outLoc, e);
+            }
         }
 
-        @Override
-        public void discard()
+        private static boolean matchesLayers(TextureLayout layout, List<NativeImage> layerImages)
         {
-            lazyOre.release();
-            lazyBackground.release();
+            for (int i = 0; i < layerImages.size(); i++)
+            {
+                NativeImage layerImage = layerImages.get(i);
+                if (!layout.matchesOverlay(i, layerImage.getWidth(), layerImage.getHeight()))
+                {
+                    return false;
+                }
+            }
+            return true;
         }
-    }
 
-    private static SpriteContents buildCombinedTexture(
-            ResourceLocation name,
-            FrameSize resultSize,
-            NativeImage image,
-            NativeImage background,
-            @Nullable ShadowMetadata shadowMetadata,
-            AnimationMetadataSection animation
-    )
-    {
-        NativeImage resultImage = new NativeImage(image.format(), image.getWidth(), image.getHeight(), false);
-        Utils.collectFrames(image, resultSize, animation).forEach(frame ->
+        private String computeCacheKey(AnimationMetadataSection oreAnim, AnimationMetadataSection bgAnim) throws IOException
         {
-            int fx = frame.x();
-            int fy = frame.y();
-
-            background.copyRect(resultImage, 0, 0, fx, fy, resultSize.width(), resultSize.height(), false, false);
-
-            if (shadowMetadata != null)
+            ContentHash hash = new ContentHash()
+                    .putString(DiskTextureCache.getVersionTag())
+                    .putResource(ore.resource())
+                    .putAnimation(oreAnim)
+                    .putString(backgroundHandle.getContentHash())
+                    .putAnimation(bgAnim)
+                    .putShadow(shadow);
+            for (ResolvedLayer layer : layers)
             {
-                ShadowGenerator.generateShadow(resultImage, image, background, frame, resultSize, shadowMetadata);
+                hash.putResource(layer.texture().resource())
+                        .putAnimation(layer.texture().animation())
+                        .putShadow(layer.shadow());
             }
+            return hash.build();
+        }
 
-            Utils.copyRect(image, resultImage, fx, fy, fx, fy, resultSize.width(), resultSize.height());
-        });
+        private String computeFingerprint(String cacheKey)
+        {
+            StringBuilder fingerprint = new StringBuilder(cacheKey)
+                    .append('/').append(ore.resource().sourcePackId())
+                    .append('/').append(background.resource().sourcePackId());
+            layers.forEach(layer -> fingerprint.append('/').append(layer.texture().resource().sourcePackId()));
+            return fingerprint.toString();
+        }
 
-        background.close();
-        image.close();
+        private SpriteContents restore(DiskTextureCache.CachedTexture texture, AnimationMetadataSection oreAnim, GenerationMetrics metrics)
+        {
+            FrameSize frameSize = texture.frameSize();
+            NativeImage image = texture.image();
+            metrics.addResultImage(image);
+            metrics.setFrameSize(frameSize);
+            metrics.setFrames((image.getWidth() / frameSize.width()) * (image.getHeight() / frameSize.height()));
+            return postProcess(new SpriteContents(outLoc, frameSize, image, oreAnim, null));
+        }
+
+        SpriteContents postProcess(SpriteContents contents)
+        {
+            return contents;
+        }
 
-        return new SpriteContents(name, resultSize, resultImage, animation, null);
+        @Override
+        public void discard()
+        {
+            lazyOre.release();
+            layers.forEach(layer -> layer.image().release());
+            backgroundHandle.release();
+            job.release();
+            report.discard();
+        }
     }
 
 
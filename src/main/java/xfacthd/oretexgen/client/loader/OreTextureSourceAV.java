@@ -3,16 +3,20 @@ package xfacthd.oretexgen.client.loader;
 import net.minecraft.client.renderer.texture.SpriteContents;
 import net.minecraft.client.renderer.texture.atlas.sources.LazyLoadedImage;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.server.packs.resources.Resource;
+import org.jetbrains.annotations.Nullable;
 import xfacthd.atlasviewer.client.api.*;
+import xfacthd.oretexgen.client.cache.BackgroundCache;
+import xfacthd.oretexgen.client.metrics.GenerationReport;
+
+import java.util.List;
 
 final class OreTextureSourceAV extends OreTextureSource implements IPackAwareSpriteSource
 {
     private final SpriteSourceMeta meta = new SpriteSourceMeta();
 
-    OreTextureSourceAV(ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow)
+    OreTextureSourceAV(ResourceLocation ore, ResourceLocation background, ShadowMetadata shadow, List<OreLayer> layers)
     {
-        super(ore, background, shadow);
+        super(ore, background, shadow, layers);
     }
 
     @Override
@@ -22,9 +26,20 @@ final class OreTextureSourceAV extends OreTextureSource implements IPackAwareSpr
     }
 
     @Override
-    OreTextureSupplier createSupplier(Resource oreResource, LazyLoadedImage lazyOre, Resource bgResource, LazyLoadedImage lazyBg)
+    OreTextureSupplier createSupplier(
+            ResourceIndex index,
+            ResourceIndex.Texture oreTexture,
+            LazyLoadedImage lazyOre,
+            ResourceIndex.Texture bgTexture,
+            BackgroundCache.Handle bgHandle,
+            List<ResolvedLayer> resolvedLayers,
+            @Nullable TextureLayout layout,
+            GenerationReport report
+    )
     {
-        OreTextureSupplierAV supplier = new OreTextureSupplierAV(oreResource, lazyOre, background, bgResource, lazyBg, shadow, ore);
+        OreTextureSupplierAV supplier = new OreTextureSupplierAV(
+                index, oreTexture, lazyOre, bgTexture, bgHandle, resolvedLayers, layout, shadow, ore, report
+        );
         supplier.atlasviewer$getMeta().readFromSpriteSourceMeta(this);
         return supplier;
     }
@@ -36,16 +51,19 @@ final class OreTextureSourceAV extends OreTextureSource implements IPackAwareSpr
         private final SpriteSupplierMeta meta = new SpriteSupplierMeta();
 
         OreTextureSupplierAV(
-                Resource oreResource,
+                ResourceIndex index,
+                ResourceIndex.Texture oreTexture,
                 LazyLoadedImage lazyOre,
-                ResourceLocation backgroundPath,
-                Resource backgroundResource,
-                LazyLoadedImage lazyBackground,
+                ResourceIndex.Texture bgTexture,
+                BackgroundCache.Handle backgroundHandle,
+                List<ResolvedLayer> layers,
+                @Nullable TextureLayout layout,
                 ShadowMetadata shadow,
-                ResourceLocation outLoc
+                ResourceLocation outLoc,
+                GenerationReport report
         )
         {
-            super(oreResource, lazyOre, backgroundPath, backgroundResource, lazyBackground, shadow, outLoc);
+            super(index, oreTexture, lazyOre, bgTexture, backgroundHandle, layers, layout, shadow, outLoc, report);
         }
 
         @Override
@@ -57,7 +75,7 @@ final class OreTextureSourceAV extends OreTextureSource implements IPackAwareSpr
         @Override
         SpriteContents postProcess(SpriteContents contents)
         {
-            ((ISpriteSourcePackAwareSpriteContents) contents).atlasviewer$captureMetaFromSpriteSupplier(this, oreResource);
+            ((ISpriteSourcePackAwareSpriteContents) contents).atlasviewer$captureMetaFromSpriteSupplier(this, ore.resource());
             return contents;
         }
     }
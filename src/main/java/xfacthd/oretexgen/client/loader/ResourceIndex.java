@@ -0,0 +1,144 @@
+package xfacthd.oretexgen.client.loader;
+
+import net.minecraft.Util;
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.ResourceManager;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.cache.BackgroundCache;
+import xfacthd.oretexgen.client.cache.DiskTextureCache;
+import xfacthd.oretexgen.client.cache.RetainedTextureCache;
+import xfacthd.oretexgen.client.util.PngHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reload-wide index of the textures referenced by the ore texture sources, each texture is resolved and parsed once
+ * per reload. Backgrounds can additionally be decoded ahead of time on the background executor.
+ */
+final class ResourceIndex
+{
+    // Every reload creates a new resource manager, the index is dropped together with it
+    private static final Map<ResourceManager, ResourceIndex> INDICES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ResourceManager manager;
+    private final Map<ResourceLocation, Optional<Texture>> textures = new ConcurrentHashMap<>();
+    private final Set<Prefetch> prefetched = ConcurrentHashMap.newKeySet();
+    private final Queue<PendingPrefetch> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean missed = !DiskTextureCache.isEnabled() && !RetainedTextureCache.isEnabled();
+
+    private ResourceIndex(ResourceManager manager)
+    {
+        this.manager = manager;
+    }
+
+    static ResourceIndex of(ResourceManager manager)
+    {
+        return INDICES.computeIfAbsent(manager, ResourceIndex::new);
+    }
+
+    /**
+     * Returns the texture at the given path, or an empty optional if it doesn't exist or its metadata is invalid.
+     */
+    Optional<Texture> resolve(ResourceLocation path)
+    {
+        return textures.computeIfAbsent(path, this::load);
+    }
+
+    /**
+     * Decodes the given background and, if shadows are generated, builds its palette ahead of time, once per reload.
+     * Deferred until the first cache miss while the disk or retained texture cache may serve all sprites.
+     */
+    void prefetchBackground(Texture background, @Nullable ShadowMetadata shadow)
+    {
+        int paletteExpansion = shadow != null ? shadow.paletteExpansion() : -1;
+        if (prefetched.add(new Prefetch(background.path(), paletteExpansion)))
+        {
+            pending.add(new PendingPrefetch(background, paletteExpansion));
+            if (missed)
+            {
+                startPrefetches();
+            }
+        }
+    }
+
+    /**
+     * Starts all deferred background prefetches, called when a sprite could not be served from a cache.
+     */
+    void onCacheMiss()
+    {
+        if (!missed)
+        {
+            missed = true;
+            startPrefetches();
+        }
+    }
+
+    private void startPrefetches()
+    {
+        PendingPrefetch prefetch;
+        while ((prefetch = pending.poll()) != null)
+        {
+            Texture background = prefetch.background();
+            BackgroundCache.prefetch(
+                    background.path(), background.resource(), prefetch.paletteExpansion(), Util.backgroundExecutor()
+            );
+        }
+    }
+
+    private Optional<Texture> load(ResourceLocation path)
+    {
+        Optional<Resource> optResource = manager.getResource(path);
+        if (optResource.isEmpty())
+        {
+            return Optional.empty();
+        }
+
+        Resource resource = optResource.get();
+        try
+        {
+            AnimationMetadataSection animation = resource.metadata()
+                    .getSection(AnimationMetadataSection.SERIALIZER)
+                    .orElse(AnimationMetadataSection.EMPTY);
+            return Optional.of(new Texture(path, resource, animation, probeHeader(path, resource)));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            OreTextureGenerator.LOGGER.error("Unable to parse metadata from {}", path, e);
+            return Optional.empty();
+        }
+    }
+
+    @Nullable
+    private static PngHeader probeHeader(ResourceLocation path, Resource resource)
+    {
+        try (InputStream stream = resource.open())
+        {
+            return PngHeader.read(stream).orElse(null);
+        }
+        catch (IOException e)
+        {
+            // Reported by the full decode later on
+            OreTextureGenerator.LOGGER.debug("Unable to read PNG header from {}", path, e);
+            return null;
+        }
+    }
+
+
+
+    /**
+     * A resolved texture with its parsed animation, {@link AnimationMetadataSection#EMPTY} if it isn't animated, and
+     * its PNG header, {@code null} if it couldn't be read.
+     */
+    record Texture(ResourceLocation path, Resource resource, AnimationMetadataSection animation, @Nullable PngHeader header) { }
+
+    private record Prefetch(ResourceLocation path, int paletteExpansion) { }
+
+    private record PendingPrefetch(Texture background, int paletteExpansion) { }
+}
@@ -11,10 +11,16 @@ import xfacthd.oretexgen.client.util.Utils;
  * @param highlightStrength the strength of the highlight color
  * @param shadowStrength    the strength of the shadow color
  * @param uniformity        how uniform shaded areas are made before lightening and darkening
+ * @param radius            the width of the highlight and shadow in pixels
+ * @param falloff           how much the highlight and shadow strength fade towards the outer edge of the radius,
+ *                          0 keeps the full strength across the whole radius
  */
-public record ShadowMetadata(int paletteExpansion, int highlightStrength, int shadowStrength, float uniformity)
+public record ShadowMetadata(
+        int paletteExpansion, int highlightStrength, int shadowStrength, float uniformity, int radius, float falloff
+)
 {
-    public static final ShadowMetadata DEFAULT = new ShadowMetadata(125, 72, 72, 1F);
+    public static final int MAX_RADIUS = 16;
+    public static final ShadowMetadata DEFAULT = new ShadowMetadata(125, 72, 72, 1F, 1, 1F);
     public static final Codec<ShadowMetadata> CODEC = RecordCodecBuilder.create(inst -> inst.group(
             Utils.optionalFieldCodecOf(Codec.intRange(0, 255), "palette_expansion", DEFAULT.paletteExpansion)
                     .forGetter(ShadowMetadata::paletteExpansion),
@@ -23,6 +29,19 @@ public record ShadowMetadata(int paletteExpansion, int highlightStrength, int sh
             Utils.optionalFieldCodecOf(Codec.intRange(0, 255), "shadow_strength", DEFAULT.shadowStrength)
                     .forGetter(ShadowMetadata::shadowStrength),
             Utils.optionalFieldCodecOf(Codec.floatRange(0F, 1F), "uniformity", DEFAULT.uniformity)
-                    .forGetter(ShadowMetadata::uniformity)
+                    .forGetter(ShadowMetadata::uniformity),
+            Utils.optionalFieldCodecOf(Codec.intRange(1, MAX_RADIUS), "radius", DEFAULT.radius)
+                    .forGetter(ShadowMetadata::radius),
+            Utils.optionalFieldCodecOf(Codec.floatRange(0F, 1F), "falloff", DEFAULT.falloff)
+                    .forGetter(ShadowMetadata::falloff)
     ).apply(inst, ShadowMetadata::new));
+
+    /**
+     * Returns the given highlight or shadow strength for a pixel at the given distance from the ore, the distance of
+     * directly adjacent pixels is 1 and always receives the full strength.
+     */
+    public int strengthAt(int strength, int distance)
+    {
+        return Math.round(strength * (1F - falloff * (distance - 1) / radius));
+    }
 }
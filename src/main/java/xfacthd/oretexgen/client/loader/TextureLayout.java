@@ -0,0 +1,190 @@
+package xfacthd.oretexgen.client.loader;
+
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.resources.ResourceLocation;
+import xfacthd.oretexgen.client.generator.OreCompositor;
+import xfacthd.oretexgen.client.util.PngHeader;
+import xfacthd.oretexgen.client.util.Utils;
+
+import java.util.*;
+
+/**
+ * Sizes and scale factors of the composition of an ore texture onto a background texture.
+ *
+ * @param oreWidth         width of the ore image, including all frames
+ * @param oreHeight        height of the ore image, including all frames
+ * @param backgroundWidth  width of the background image
+ * @param backgroundHeight height of the background image
+ * @param resultSize       frame size of the generated texture
+ * @param oreScale         factor by which the ore is upscaled
+ * @param backgroundScale  factor by which the background is upscaled
+ * @param overlays         layouts of the overlays composed on top of the ore, in order
+ */
+record TextureLayout(
+        int oreWidth,
+        int oreHeight,
+        int backgroundWidth,
+        int backgroundHeight,
+        FrameSize resultSize,
+        int oreScale,
+        int backgroundScale,
+        List<OverlayLayout> overlays
+)
+{
+    /**
+     * Validates the given textures against each other without decoding them, returns an empty optional if the layout
+     * has to be determined from the decoded images.
+     *
+     * @throws IllegalArgumentException if the textures can't be combined
+     */
+    static Optional<TextureLayout> probe(
+            ResourceIndex.Texture ore, ResourceIndex.Texture background, List<ResourceIndex.Texture> overlays, ResourceLocation outLoc
+    )
+    {
+        if (background.animation() != AnimationMetadataSection.EMPTY)
+        {
+            throw new IllegalArgumentException(
+                    "Ore background texture must not be animated but '" + background.path() + "' specifies an animation"
+            );
+        }
+
+        PngHeader oreHeader = ore.header();
+        PngHeader bgHeader = background.header();
+        if (oreHeader == null || bgHeader == null || overlays.stream().anyMatch(overlay -> overlay.header() == null))
+        {
+            return Optional.empty();
+        }
+
+        TextureLayout layout = compute(
+                ore.animation(), oreHeader.width(), oreHeader.height(), bgHeader.width(), bgHeader.height(), outLoc
+        );
+        List<OverlayLayout> overlayLayouts = new ArrayList<>(overlays.size());
+        for (ResourceIndex.Texture overlay : overlays)
+        {
+            PngHeader header = Objects.requireNonNull(overlay.header());
+            overlayLayouts.add(layout.computeOverlay(overlay.path(), overlay.animation(), header.width(), header.height(), outLoc));
+        }
+        return Optional.of(layout.withOverlays(overlayLayouts));
+    }
+
+    /**
+     * Computes the layout for an ore and background image of the given sizes.
+     *
+     * @throws IllegalArgumentException if the aspect ratio of the ore frames and the background doesn't match
+     */
+    static TextureLayout compute(
+            AnimationMetadataSection oreAnim, int oreWidth, int oreHeight, int bgWidth, int bgHeight, ResourceLocation outLoc
+    )
+    {
+        FrameSize size = oreAnim.calculateFrameSize(oreWidth, oreHeight);
+        int fgWidth = size.width();
+        int fgHeight = size.height();
+        if (!Utils.checkAspectRatio(bgWidth, bgHeight, fgWidth, fgHeight))
+        {
+            throw new IllegalArgumentException(
+                    "Aspect ratio of ore and background texture does not match for texture '" + outLoc + "'"
+            );
+        }
+
+        FrameSize resultSize = new FrameSize(Math.max(bgWidth, fgWidth), Math.max(bgHeight, fgHeight));
+        int bgScale = fgWidth > bgWidth ? (fgWidth / bgWidth) : 1;
+        int fgScale = bgWidth > fgWidth ? (bgWidth / fgWidth) : 1;
+        return new TextureLayout(oreWidth, oreHeight, bgWidth, bgHeight, resultSize, fgScale, bgScale, List.of());
+    }
+
+    /**
+     * Computes the layout of an overlay image of the given size on top of the ore of this layout.
+     *
+     * @throws IllegalArgumentException if the overlay can't be composed onto the ore
+     */
+    OverlayLayout computeOverlay(
+            ResourceLocation path, AnimationMetadataSection overlayAnim, int width, int height, ResourceLocation outLoc
+    )
+    {
+        FrameSize size = overlayAnim.calculateFrameSize(width, height);
+        int resultWidth = resultSize.width();
+        int resultHeight = resultSize.height();
+        if (resultWidth % size.width() != 0 || resultHeight % size.height() != 0 ||
+            resultWidth / size.width() != resultHeight / size.height())
+        {
+            throw new IllegalArgumentException(
+                    "Frame size of ore layer '" + path + "' does not fit the size of texture '" + outLoc + "'"
+            );
+        }
+
+        int scale = resultWidth / size.width();
+        boolean animated = width != size.width() || height != size.height();
+        if (animated && (width * scale != oreWidth * oreScale || height * scale != oreHeight * oreScale))
+        {
+            throw new IllegalArgumentException(
+                    "Animated ore layer '" + path + "' does not have the same frames as the ore of texture '" + outLoc + "'"
+            );
+        }
+        return new OverlayLayout(width, height, scale, animated);
+    }
+
+    TextureLayout withOverlays(List<OverlayLayout> overlays)
+    {
+        return new TextureLayout(
+                oreWidth, oreHeight, backgroundWidth, backgroundHeight, resultSize, oreScale, backgroundScale, List.copyOf(overlays)
+        );
+    }
+
+    /**
+     * Returns whether the given decoded image sizes match this layout.
+     */
+    boolean matches(int oreWidth, int oreHeight, int bgWidth, int bgHeight)
+    {
+        return this.oreWidth == oreWidth && this.oreHeight == oreHeight &&
+               this.backgroundWidth == bgWidth && this.backgroundHeight == bgHeight;
+    }
+
+    /**
+     * Returns whether the given decoded overlay size matches the overlay at the given index of this layout.
+     */
+    boolean matchesOverlay(int index, int width, int height)
+    {
+        OverlayLayout overlay = overlays.get(index);
+        return overlay.width() == width && overlay.height() == height;
+    }
+
+    /**
+     * Estimates the native memory held while restoring the generated texture from a cache, which stages the pixels
+     * next to the image.
+     */
+    long estimateRestoreMemory()
+    {
+        return 2L * oreWidth * oreHeight * oreScale * oreScale * 4L;
+    }
+
+    /**
+     * Estimates the native memory held while composing with this layout.
+     *
+     * @param staged whether a copy of the result is staged for storing it in a cache
+     */
+    long estimateNativeMemory(boolean staged)
+    {
+        long footprint = OreCompositor.estimateNativeMemory(
+                oreWidth, oreHeight, oreScale, backgroundWidth, backgroundHeight, backgroundScale
+        );
+        for (OverlayLayout overlay : overlays)
+        {
+            footprint += OreCompositor.estimateOverlayMemory(overlay.width(), overlay.height(), overlay.scale());
+        }
+        if (staged)
+        {
+            footprint += (long) oreWidth * oreHeight * oreScale * oreScale * 4L;
+        }
+        return footprint;
+    }
+
+
+
+    /**
+     * Size and scale factor of an overlay composed on top of the ore.
+     *
+     * @param animated whether the overlay has the same frame layout as the ore instead of a single frame
+     */
+    record OverlayLayout(int width, int height, int scale, boolean animated) { }
+}
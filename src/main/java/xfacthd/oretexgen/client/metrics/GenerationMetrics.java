@@ -0,0 +1,238 @@
+package xfacthd.oretexgen.client.metrics;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.resources.ResourceLocation;
+import xfacthd.oretexgen.client.generator.NativeMemoryBudget;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and statistics of the generation of a single ore texture. Shadow and blend times are accumulated over all
+ * composition workers of the texture, all other values are recorded by the generating thread.
+ */
+public final class GenerationMetrics
+{
+    private final ResourceLocation sprite;
+    private final GenerationReport report;
+    private final OreGenerationEvent event = new OreGenerationEvent();
+    private final long startTime;
+    private final LongAdder shadowTime = new LongAdder();
+    private final LongAdder blendTime = new LongAdder();
+    private long totalTime = 0;
+    private long decodeTime = 0;
+    private long scaleTime = 0;
+    private int frames = 0;
+    private int width = 0;
+    private int height = 0;
+    private int paletteSize = 0;
+    private long nativeBytes = 0;
+    private long temporaryBytes = 0;
+    private CacheResult cacheResult = CacheResult.DISABLED;
+    private boolean failed = false;
+
+    public GenerationMetrics(ResourceLocation sprite, GenerationReport report)
+    {
+        this.sprite = sprite;
+        this.report = report;
+        this.event.begin();
+        this.startTime = System.nanoTime();
+    }
+
+    public void addDecodeTime(long nanos)
+    {
+        decodeTime += nanos;
+    }
+
+    public void addScaleTime(long nanos)
+    {
+        scaleTime += nanos;
+    }
+
+    public void addShadowTime(long nanos)
+    {
+        shadowTime.add(nanos);
+    }
+
+    public void addBlendTime(long nanos)
+    {
+        blendTime.add(nanos);
+    }
+
+    public void setFrames(int frames)
+    {
+        this.frames = frames;
+    }
+
+    public void setFrameSize(FrameSize size)
+    {
+        this.width = size.width();
+        this.height = size.height();
+    }
+
+    public void setPaletteSize(int paletteSize)
+    {
+        this.paletteSize = paletteSize;
+    }
+
+    /**
+     * Records the native memory of an intermediate image which is freed before generation completes.
+     */
+    public void addTemporaryImage(NativeImage image)
+    {
+        long bytes = sizeOf(image);
+        nativeBytes += bytes;
+        temporaryBytes += bytes;
+        report.allocate(bytes);
+    }
+
+    /**
+     * Records the native memory of the resulting image, which stays allocated until the atlas is uploaded.
+     */
+    public void addResultImage(NativeImage image)
+    {
+        long bytes = sizeOf(image);
+        nativeBytes += bytes;
+        report.allocate(bytes);
+    }
+
+    public void recordReservation(NativeMemoryBudget.Reservation reservation)
+    {
+        report.recordReservation(reservation.getTotal());
+    }
+
+    public void setCacheResult(CacheResult cacheResult)
+    {
+        this.cacheResult = cacheResult;
+    }
+
+    public void markFailed()
+    {
+        this.failed = true;
+    }
+
+    /**
+     * Stops the timer, emits the JFR event and hands the metrics to the report. Must be called exactly once after
+     * generation completed or failed.
+     */
+    public void finish()
+    {
+        totalTime = System.nanoTime() - startTime;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.sprite = sprite.toString();
+            event.decodeTime = decodeTime;
+            event.scaleTime = scaleTime;
+            event.shadowTime = shadowTime.sum();
+            event.blendTime = blendTime.sum();
+            event.frames = frames;
+            event.width = width;
+            event.height = height;
+            event.paletteSize = paletteSize;
+            event.nativeBytes = nativeBytes;
+            event.cache = cacheResult.name();
+            event.failed = failed;
+            event.commit();
+        }
+        report.complete(this, temporaryBytes);
+    }
+
+    public ResourceLocation sprite()
+    {
+        return sprite;
+    }
+
+    public long totalTime()
+    {
+        return totalTime;
+    }
+
+    public long decodeTime()
+    {
+        return decodeTime;
+    }
+
+    public long scaleTime()
+    {
+        return scaleTime;
+    }
+
+    public long shadowTime()
+    {
+        return shadowTime.sum();
+    }
+
+    public long blendTime()
+    {
+        return blendTime.sum();
+    }
+
+    public int frames()
+    {
+        return frames;
+    }
+
+    public int width()
+    {
+        return width;
+    }
+
+    public int height()
+    {
+        return height;
+    }
+
+    public int paletteSize()
+    {
+        return paletteSize;
+    }
+
+    public long nativeBytes()
+    {
+        return nativeBytes;
+    }
+
+    public CacheResult cacheResult()
+    {
+        return cacheResult;
+    }
+
+    public boolean failed()
+    {
+        return failed;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+                Locale.ROOT,
+                "%s: %.2fms (decode %.2fms, scale %.2fms, shadow %.2fms, blend %.2fms), %d frames of %dx%d, palette %d, %d KiB native, cache %s",
+                sprite, millis(totalTime), millis(decodeTime), millis(scaleTime), millis(shadowTime()), millis(blendTime()),
+                frames, width, height, paletteSize, nativeBytes / 1024, cacheResult.name().toLowerCase(Locale.ROOT)
+        );
+    }
+
+    private static long sizeOf(NativeImage image)
+    {
+        return (long) image.getWidth() * image.getHeight() * image.format().components();
+    }
+
+    static double millis(long nanos)
+    {
+        return nanos / 1_000_000D;
+    }
+
+
+
+    public enum CacheResult
+    {
+        DISABLED,
+        HIT,
+        RETAINED,
+        SHARED,
+        MISS
+    }
+}
@@ -0,0 +1,145 @@
+package xfacthd.oretexgen.client.metrics;
+
+import net.minecraft.client.renderer.texture.atlas.SpriteSource;
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.generator.NativeMemoryBudget;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates the {@link GenerationMetrics} of all ore textures of the atlas a {@link SpriteSource.Output} belongs to
+ * and logs a summary once the last of them has been generated or discarded.
+ */
+public final class GenerationReport
+{
+    private static final int SLOWEST_COUNT = 5;
+    private static final Map<SpriteSource.Output, GenerationReport> REPORTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final long startTime = System.nanoTime();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<GenerationMetrics> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nativeInUse = new AtomicLong();
+    private final AtomicLong peakNative = new AtomicLong();
+    private final AtomicLong peakReserved = new AtomicLong();
+
+    /**
+     * Returns the report of the atlas the given output belongs to.
+     */
+    public static GenerationReport of(SpriteSource.Output output)
+    {
+        return REPORTS.computeIfAbsent(output, o -> new GenerationReport());
+    }
+
+    /**
+     * Registers a texture which will either be generated or discarded.
+     */
+    public void register()
+    {
+        pending.incrementAndGet();
+    }
+
+    /**
+     * Marks a registered texture as discarded without being generated.
+     */
+    public void discard()
+    {
+        finishOne();
+    }
+
+    /**
+     * Returns the highest amount of native memory held by generated textures and their intermediate images so far.
+     */
+    public long getPeakNativeMemory()
+    {
+        return peakNative.get();
+    }
+
+    void allocate(long bytes)
+    {
+        long inUse = nativeInUse.addAndGet(bytes);
+        peakNative.accumulateAndGet(inUse, Math::max);
+    }
+
+    void recordReservation(long totalReserved)
+    {
+        peakReserved.accumulateAndGet(totalReserved, Math::max);
+    }
+
+    void complete(GenerationMetrics metrics, long freedBytes)
+    {
+        nativeInUse.addAndGet(-freedBytes);
+        completed.add(metrics);
+        finishOne();
+    }
+
+    private void finishOne()
+    {
+        if (pending.decrementAndGet() == 0)
+        {
+            REPORTS.values().remove(this);
+            logSummary();
+        }
+    }
+
+    private void logSummary()
+    {
+        List<GenerationMetrics> metrics = new ArrayList<>(completed);
+        if (metrics.isEmpty())
+        {
+            return;
+        }
+
+        long wallTime = System.nanoTime() - startTime;
+        long totalTime = 0;
+        int cacheHits = 0;
+        int retained = 0;
+        int shared = 0;
+        int failed = 0;
+        for (GenerationMetrics entry : metrics)
+        {
+            totalTime += entry.totalTime();
+            if (entry.cacheResult() == GenerationMetrics.CacheResult.HIT)
+            {
+                cacheHits++;
+            }
+            else if (entry.cacheResult() == GenerationMetrics.CacheResult.RETAINED)
+            {
+                retained++;
+            }
+            else if (entry.cacheResult() == GenerationMetrics.CacheResult.SHARED)
+            {
+                shared++;
+            }
+            if (entry.failed())
+            {
+                failed++;
+            }
+        }
+
+        String slowest = metrics.stream()
+                .sorted(Comparator.comparingLong(GenerationMetrics::totalTime).reversed())
+                .limit(SLOWEST_COUNT)
+                .map(entry -> String.format(Locale.ROOT, "%s (%.2fms)", entry.sprite(), GenerationMetrics.millis(entry.totalTime())))
+                .collect(Collectors.joining(", "));
+
+        OreTextureGenerator.LOGGER.info(
+                "Generated {} ore textures in {}ms ({}ms total generation time, {} cache hits, {} retained, {} shared with duplicates, {} failed), peak native memory {} KiB (budget peak {} of {} KiB), slowest: {}",
+                metrics.size(),
+                String.format(Locale.ROOT, "%.2f", GenerationMetrics.millis(wallTime)),
+                String.format(Locale.ROOT, "%.2f", GenerationMetrics.millis(totalTime)),
+                cacheHits,
+                retained,
+                shared,
+                failed,
+                peakNative.get() / 1024,
+                peakReserved.get() / 1024,
+                NativeMemoryBudget.getLimit() / 1024,
+                slowest
+        );
+        metrics.forEach(entry -> OreTextureGenerator.LOGGER.debug("{}", entry));
+    }
+}
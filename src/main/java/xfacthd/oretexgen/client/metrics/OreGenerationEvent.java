@@ -0,0 +1,44 @@
+package xfacthd.oretexgen.client.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted for every generated ore texture, the event duration covers the whole generation.
+ */
+@Name("oretexgen.OreGeneration")
+@Label("Ore Texture Generation")
+@Category({ "OreTexGen" })
+@Description("Generation of a single ore texture")
+@StackTrace(false)
+final class OreGenerationEvent extends Event
+{
+    @Label("Sprite")
+    String sprite;
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long decodeTime;
+    @Label("Scale Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long scaleTime;
+    @Label("Shadow Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long shadowTime;
+    @Label("Blend Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long blendTime;
+    @Label("Frames")
+    int frames;
+    @Label("Frame Width")
+    int width;
+    @Label("Frame Height")
+    int height;
+    @Label("Palette Size")
+    int paletteSize;
+    @Label("Native Memory Allocated")
+    @DataAmount
+    long nativeBytes;
+    @Label("Cache")
+    String cache;
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,109 @@
+package xfacthd.oretexgen.client.shadow;
+
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+import xfacthd.oretexgen.client.util.VectorSupport;
+
+/**
+ * Packed highlight and shadow masks of a range of rows of an ore frame, derived from a bitset of opaque pixels with
+ * word-level shifts.
+ */
+final class EdgeMask
+{
+    private final int startY;
+    private final int words;
+    private final long[] highlight;
+    private final long[] shadow;
+
+    private EdgeMask(int startY, int words, long[] highlight, long[] shadow)
+    {
+        this.startY = startY;
+        this.words = words;
+        this.highlight = highlight;
+        this.shadow = shadow;
+    }
+
+    /**
+     * Computes the masks for the rows from {@code startY} (inclusive) to {@code endY} (exclusive) of the given frame.
+     */
+    static EdgeMask compute(PixelView foreground, FrameInfo frame, FrameSize size, int startY, int endY)
+    {
+        int w = size.width();
+        int h = size.height();
+        int words = (w + 63) >>> 6;
+        int rows = endY - startY;
+        long lastWordMask = (w & 63) == 0 ? -1L : (1L << (w & 63)) - 1L;
+
+        // Opaque rows from startY - 1 to endY (inclusive), rows outside the frame stay empty
+        long[] opaque = new long[(rows + 2) * words];
+        int[] scratch = new int[w];
+        for (int row = 0; row < rows + 2; row++)
+        {
+            int y = startY - 1 + row;
+            if (y < 0 || y >= h)
+            {
+                continue;
+            }
+
+            foreground.readRow(frame.x(), frame.y() + y, w, scratch, 0);
+            int base = row * words;
+            if (VectorSupport.ENABLED)
+            {
+                VectorSupport.KERNELS.opaqueBits(scratch, w, opaque, base);
+                continue;
+            }
+            for (int x = 0; x < w; x++)
+            {
+                if ((scratch[x] >>> 24) >= 128)
+                {
+                    opaque[base + (x >>> 6)] |= 1L << x;
+                }
+            }
+        }
+
+        long[] highlight = new long[rows * words];
+        long[] shadow = new long[rows * words];
+        for (int row = 0; row < rows; row++)
+        {
+            int above = row * words;
+            int current = above + words;
+            int below = current + words;
+            for (int word = 0; word < words; word++)
+            {
+                long bits = opaque[current + word];
+                // Opaque neighbor to the right: bit x is set if bit x + 1 is set
+                long nextCarry = word + 1 < words ? opaque[current + word + 1] << 63 : 0L;
+                long right = (bits >>> 1) | nextCarry;
+                // Opaque neighbor to the left: bit x is set if bit x - 1 is set
+                long prevCarry = word > 0 ? opaque[current + word - 1] >>> 63 : 0L;
+                long left = (bits << 1) | prevCarry;
+                if (word == words - 1)
+                {
+                    left &= lastWordMask;
+                }
+
+                long low = right | opaque[below + word];
+                long high = left | opaque[above + word];
+                highlight[row * words + word] = high & ~low;
+                shadow[row * words + word] = low & ~high;
+            }
+        }
+        return new EdgeMask(startY, words, highlight, shadow);
+    }
+
+    int words()
+    {
+        return words;
+    }
+
+    long highlight(int y, int word)
+    {
+        return highlight[(y - startY) * words + word];
+    }
+
+    long shadow(int y, int word)
+    {
+        return shadow[(y - startY) * words + word];
+    }
+}
@@ -2,49 +2,77 @@ package xfacthd.oretexgen.client.shadow;
 
 import com.mojang.blaze3d.platform.NativeImage;
 import net.minecraft.util.FastColor;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+import xfacthd.oretexgen.client.util.PixelView;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Palette
 {
-    private final List<Integer> colors;
+    private static final int EMPTY = -1;
+    private static final int CUBE_BITS = 5;
+    private static final int CUBE_SIZE = 1 << CUBE_BITS;
+    private static final int[] CHANNEL_SHIFTS = new int[] { 16, 8, 0 };
+
+    private final int[] colors;
+    private final int[] lookupKeys;
+    private final int[] lookupValues;
+    private final Map<ShadowMetadata, ShadeTable> shadeTables = new ConcurrentHashMap<>();
+    private volatile int[] nearestCube = null;
     public final int average;
 
     public Palette(NativeImage image, int paletteExpansion)
     {
-        Set<Integer> colors = new HashSet<>();
-        for (int y = 0; y < image.getHeight(); y++)
+        // Collect distinct opaque colors in the order they are first encountered
+        ColorTable distinct = new ColorTable(64);
+        PixelView pixels = PixelView.of(image);
+        int width = pixels.width();
+        int[] row = new int[width];
+        for (int y = 0; y < pixels.height(); y++)
         {
-            for (int x = 0; x < image.getWidth(); x++)
+            pixels.readRow(0, y, width, row, 0);
+            for (int x = 0; x < width; x++)
             {
-                int color = image.getPixelRGBA(x, y);
+                int color = row[x];
                 if (FastColor.ARGB32.alpha(color) == 255)
                 {
-                    colors.add(color & 0x00FFFFFF);
+                    distinct.putIfAbsent(color & 0x00FFFFFF, distinct.size);
                 }
             }
         }
 
-        this.colors = new ArrayList<>(colors.stream().sorted(Comparator.comparing(Palette::value)).toList());
-        float averageF = this.colors.size() / 2f;
+        int count = distinct.size;
+        if (count == 0)
+        {
+            throw new IllegalArgumentException("Background texture does not contain any opaque pixels");
+        }
+
+        int[] sorted = sortByValue(distinct, count);
+
+        int cap = 2 * count / 5;
+        int[] buffer = new int[count + 2 * cap];
+        int head = cap;
+        int tail = head + count;
+        System.arraycopy(sorted, 0, buffer, head, count);
+        float averageF = count / 2f;
 
         // Expand the palette if it is too narrow (looking at you, stone)
-        int paletteSize = value(this.colors.get(this.colors.size() - 1)) - value(this.colors.get(0));
+        int paletteSize = value(buffer[tail - 1]) - value(buffer[head]);
         if (paletteSize < paletteExpansion)
         {
-            int count = 0;
-            int cap = 2 * this.colors.size() / 5;
+            int added = 0;
             boolean below = true;
             while (paletteSize < 150)
             {
-                count += 1;
+                added += 1;
                 // Increase the size by at most 2/5
-                if (count > cap)
+                if (added > cap)
                 {
                     break;
                 }
 
-                int oldColor = this.colors.get(below ? 0 : this.colors.size() - 1);
+                int oldColor = below ? buffer[head] : buffer[tail - 1];
                 int r = FastColor.ARGB32.red(oldColor);
                 int g = FastColor.ARGB32.green(oldColor);
                 int b = FastColor.ARGB32.blue(oldColor);
@@ -67,21 +95,32 @@ public final class Palette
 
                 if (below)
                 {
-                    this.colors.add(0, newColor);
+                    head -= 1;
+                    buffer[head] = newColor;
                     averageF += 1;
                 }
                 else
                 {
-                    this.colors.add(newColor);
+                    buffer[tail] = newColor;
+                    tail += 1;
                 }
 
-                paletteSize = value(this.colors.get(this.colors.size() - 1)) - value(this.colors.get(0));
+                paletteSize = value(buffer[tail - 1]) - value(buffer[head]);
                 below = !below;
             }
         }
 
-        this.average = (int) (averageF / this.colors.size() * 255);
+        this.colors = Arrays.copyOfRange(buffer, head, tail);
+        this.average = (int) (averageF / this.colors.length * 255);
 
+        // The expansion may produce colors which are already present, the first occurrence wins
+        ColorTable lookup = new ColorTable(this.colors.length);
+        for (int i = 0; i < this.colors.length; i++)
+        {
+            lookup.putIfAbsent(this.colors[i], i);
+        }
+        this.lookupKeys = lookup.keys;
+        this.lookupValues = lookup.values;
     }
 
     /**
@@ -91,35 +130,367 @@ public final class Palette
     {
         if (index < 0)
         {
-            return colors.get(0);
+            return colors[0];
         }
-        else if (index > 255)
+        else if (index >= 255)
         {
-            return colors.get(colors.size() - 1);
+            return colors[colors.length - 1];
         }
-        index = index * colors.size() / 255;
-        return colors.get(index);
+        index = index * colors.length / 255;
+        return colors[index];
     }
 
     /**
-     * Takes an ARGB32 palette color and returns the corresponding 0-255 index, or 0 if the color is not in the
-     * palette.
+     * Takes an ARGB32 color and returns the corresponding 0-255 index of the nearest palette color.
      */
     public int getIndex(int color)
     {
-        color = color & 0x00FFFFFF;
+        return getSlot(color) * 255 / colors.length;
+    }
+
+    /**
+     * Takes an ARGB32 color and returns its position in the palette. Colors which are not in the palette, such as the
+     * colors of translucent pixels, map to the position of the nearest palette color.
+     */
+    int getSlot(int color)
+    {
+        int slot = ColorTable.get(lookupKeys, lookupValues, color & 0x00FFFFFF);
+        if (slot != EMPTY)
+        {
+            return slot;
+        }
+
+        int[] cube = nearestCube;
+        if (cube == null)
+        {
+            // Racing threads compute the same value, no need to block here
+            cube = buildNearestCube(colors);
+            nearestCube = cube;
+        }
+        return cube[cubeIndex(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF)];
+    }
+
+    /**
+     * Returns the shared {@link ShadeTable} of this palette for the given shadow settings.
+     */
+    public ShadeTable getShadeTable(ShadowMetadata shadowMetadata)
+    {
+        return shadeTables.computeIfAbsent(shadowMetadata, meta -> new ShadeTable(this, meta));
+    }
+
+    public int size()
+    {
+        return colors.length;
+    }
+
+    /**
+     * Sorts the collected colors by their value, colors with equal value keep the iteration order of a
+     * {@code HashSet<Integer>} to stay consistent with the previous implementation.
+     */
+    private static int[] sortByValue(ColorTable distinct, int count)
+    {
+        int[] byOrder = new int[count];
+        for (int slot = 0; slot < distinct.keys.length; slot++)
+        {
+            if (distinct.keys[slot] != EMPTY)
+            {
+                byOrder[distinct.values[slot]] = distinct.keys[slot];
+            }
+        }
+
+        Set<Integer> iterationOrder = new HashSet<>();
+        for (int color : byOrder)
+        {
+            iterationOrder.add(color);
+        }
+
+        long[] keys = new long[count];
+        int n = 0;
+        for (int color : iterationOrder)
+        {
+            keys[n] = ((long) value(color) << 32) | n;
+            byOrder[n] = color;
+            n++;
+        }
+        Arrays.sort(keys);
+
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            sorted[i] = byOrder[(int) keys[i]];
+        }
+        return sorted;
+    }
+
+    /**
+     * Builds a {@code 32x32x32} cube over the RGB space which holds the position of the palette color nearest to the
+     * center of each cell, ties resolve to the lowest position.
+     */
+    private static int[] buildNearestCube(int[] colors)
+    {
+        int[] tree = new int[colors.length];
+        for (int slot = 0; slot < tree.length; slot++)
+        {
+            tree[slot] = slot;
+        }
+        int[] bounds = new int[colors.length * 6];
+        buildTree(tree, bounds, colors, 0, tree.length, 0);
+
+        int[] cube = new int[CUBE_SIZE * CUBE_SIZE * CUBE_SIZE];
+        NearestSearch search = new NearestSearch(tree, bounds, colors);
+        for (int index = 0; index < cube.length; index++)
+        {
+            search.reset(index);
+            search.visit(0, tree.length, 0);
+            cube[index] = search.best;
+        }
+        return cube;
+    }
+
+    /**
+     * Arranges the given range of slots as an implicit k-d tree, storing the bounding box of each subtree at six
+     * times its middle position.
+     */
+    private static void buildTree(int[] tree, int[] bounds, int[] colors, int from, int to, int depth)
+    {
+        if (to <= from)
+        {
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+        for (int axis = 0; axis < 3; axis++)
+        {
+            int min = 255;
+            int max = 0;
+            for (int i = from; i < to; i++)
+            {
+                int value = colors[tree[i]] >> CHANNEL_SHIFTS[axis] & 0xFF;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            bounds[mid * 6 + axis * 2] = min;
+            bounds[mid * 6 + axis * 2 + 1] = max;
+        }
+        if (to - from == 1)
+        {
+            return;
+        }
 
-        int index = colors.indexOf(color);
-        if (index == -1)
+        int shift = CHANNEL_SHIFTS[depth % 3];
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++)
         {
-            index = 0;
+            keys[i - from] = ((long) (colors[tree[i]] >> shift & 0xFF) << 32) | tree[i];
         }
+        Arrays.sort(keys);
+        for (int i = from; i < to; i++)
+        {
+            tree[i] = (int) keys[i - from];
+        }
+
+        buildTree(tree, bounds, colors, from, mid, depth + 1);
+        buildTree(tree, bounds, colors, mid + 1, to, depth + 1);
+    }
+
+    private static int cubeIndex(int c0, int c1, int c2)
+    {
+        int shift = 8 - CUBE_BITS;
+        return (((c0 >> shift) << CUBE_BITS) | (c1 >> shift)) << CUBE_BITS | (c2 >> shift);
+    }
+
+    /**
+     * Returns the squared distance between the center of the given cube cell and the given color.
+     */
+    private static int cellDistance(int index, int color)
+    {
+        int d0 = cellCenter(index >> (2 * CUBE_BITS)) - (color >> 16 & 0xFF);
+        int d1 = cellCenter((index >> CUBE_BITS) & (CUBE_SIZE - 1)) - (color >> 8 & 0xFF);
+        int d2 = cellCenter(index & (CUBE_SIZE - 1)) - (color & 0xFF);
+        return d0 * d0 + d1 * d1 + d2 * d2;
+    }
 
-        return index * 255 / colors.size();
+    /**
+     * Returns the channel value at the center of the given cell coordinate.
+     */
+    private static int cellCenter(int coord)
+    {
+        int shift = 8 - CUBE_BITS;
+        return (coord << shift) + (1 << (shift - 1));
     }
 
     private static int value(int color)
     {
         return (color & 0xFF) + (color >> 8 & 0xFF) + (color >> 16 & 0xFF);
     }
+
+
+
+    /**
+     * Nearest neighbor query of a cube cell center against the k-d tree built by {@link #buildTree}.
+     */
+    private static final class NearestSearch
+    {
+        private final int[] tree;
+        private final int[] bounds;
+        private final int[] colors;
+        private final int[] center = new int[3];
+        private int index;
+        private int best = 0;
+        private int bestDist;
+
+        NearestSearch(int[] tree, int[] bounds, int[] colors)
+        {
+            this.tree = tree;
+            this.bounds = bounds;
+            this.colors = colors;
+        }
+
+        void reset(int index)
+        {
+            this.index = index;
+            center[0] = cellCenter(index >> (2 * CUBE_BITS));
+            center[1] = cellCenter((index >> CUBE_BITS) & (CUBE_SIZE - 1));
+            center[2] = cellCenter(index & (CUBE_SIZE - 1));
+            // The match of the previous, adjacent cell is usually close
+            bestDist = cellDistance(index, colors[best]);
+        }
+
+        void visit(int from, int to, int depth)
+        {
+            if (from >= to)
+            {
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            if (boxDistance(mid) > bestDist)
+            {
+                return;
+            }
+
+            int slot = tree[mid];
+            int dist = cellDistance(index, colors[slot]);
+            if (dist < bestDist || (dist == bestDist && slot < best))
+            {
+                best = slot;
+                bestDist = dist;
+            }
+
+            int axis = depth % 3;
+            int diff = center[axis] - (colors[slot] >> CHANNEL_SHIFTS[axis] & 0xFF);
+            if (diff <= 0)
+            {
+                visit(from, mid, depth + 1);
+                visit(mid + 1, to, depth + 1);
+            }
+            else
+            {
+                visit(mid + 1, to, depth + 1);
+                visit(from, mid, depth + 1);
+            }
+        }
+
+        /**
+         * Returns the squared distance between the cell center and the bounding box of the given subtree.
+         */
+        private int boxDistance(int node)
+        {
+            int dist = 0;
+            for (int axis = 0; axis < 3; axis++)
+            {
+                int min = bounds[node * 6 + axis * 2];
+                int max = bounds[node * 6 + axis * 2 + 1];
+                int d = center[axis] < min ? min - center[axis] : (center[axis] > max ? center[axis] - max : 0);
+                dist += d * d;
+            }
+            return dist;
+        }
+    }
+
+    /**
+     * Open-addressing map from 24 bit RGB colors to non-negative ints.
+     */
+    private static final class ColorTable
+    {
+        private int[] keys;
+        private int[] values;
+        private int size = 0;
+
+        ColorTable(int expectedSize)
+        {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+            this.keys = new int[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void putIfAbsent(int color, int value)
+        {
+            int mask = keys.length - 1;
+            int slot = hash(color) & mask;
+            while (keys[slot] != EMPTY)
+            {
+                if (keys[slot] == color)
+                {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = color;
+            values[slot] = value;
+            size++;
+            if (size * 2 > keys.length)
+            {
+                grow();
+            }
+        }
+
+        private void grow()
+        {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            Arrays.fill(keys, EMPTY);
+
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++)
+            {
+                if (oldKeys[i] != EMPTY)
+                {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY)
+                    {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        static int get(int[] keys, int[] values, int color)
+        {
+            int mask = keys.length - 1;
+            int slot = hash(color) & mask;
+            int key;
+            while ((key = keys[slot]) != EMPTY)
+            {
+                if (key == color)
+                {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return EMPTY;
+        }
+
+        private static int hash(int color)
+        {
+            int h = color * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
 }
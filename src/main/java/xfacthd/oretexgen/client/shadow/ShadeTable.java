@@ -0,0 +1,53 @@
+package xfacthd.oretexgen.client.shadow;
+
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+
+/**
+ * Precomputed highlight and shadow colors for every color of a {@link Palette} with a given {@link ShadowMetadata},
+ * with one set of colors per distance from the ore.
+ */
+public final class ShadeTable
+{
+    private final Palette palette;
+    private final int size;
+    private final int[] highlight;
+    private final int[] shadow;
+
+    ShadeTable(Palette palette, ShadowMetadata shadowMetadata)
+    {
+        this.palette = palette;
+        this.size = palette.size();
+        int radius = shadowMetadata.radius();
+        this.highlight = new int[size * radius];
+        this.shadow = new int[size * radius];
+        for (int slot = 0; slot < size; slot++)
+        {
+            int index = slot * 255 / size;
+            index = (int) ((index + palette.average * shadowMetadata.uniformity()) / (1 + shadowMetadata.uniformity()));
+            for (int distance = 1; distance <= radius; distance++)
+            {
+                int offset = (distance - 1) * size + slot;
+                highlight[offset] = palette.getColor(index + shadowMetadata.strengthAt(shadowMetadata.highlightStrength(), distance));
+                shadow[offset] = palette.getColor(index - shadowMetadata.strengthAt(shadowMetadata.shadowStrength(), distance));
+            }
+        }
+    }
+
+    /**
+     * Returns the highlighted or shadowed variant of the given ARGB32 background color, keeping its alpha.
+     */
+    public int shade(int color, boolean high)
+    {
+        return shade(color, high, 1);
+    }
+
+    /**
+     * Returns the highlighted or shadowed variant of the given ARGB32 background color for a pixel at the given
+     * distance from the ore, keeping its alpha.
+     */
+    public int shade(int color, boolean high, int distance)
+    {
+        int offset = (distance - 1) * size + palette.getSlot(color);
+        return (high ? highlight[offset] : shadow[offset]) | (color & 0xFF000000);
+    }
+}
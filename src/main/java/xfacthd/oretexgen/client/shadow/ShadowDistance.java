@@ -0,0 +1,135 @@
+package xfacthd.oretexgen.client.shadow;
+
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
+
+import java.util.Arrays;
+
+/**
+ * Directional distance field of a range of rows of an ore frame for shadows wider than one pixel, computed in linear
+ * time with running counters. Reduces to {@link EdgeMask} for a radius of 1.
+ */
+final class ShadowDistance
+{
+    private final int startY;
+    private final int width;
+    private final byte[] distances;
+
+    private ShadowDistance(int startY, int width, byte[] distances)
+    {
+        this.startY = startY;
+        this.width = width;
+        this.distances = distances;
+    }
+
+    /**
+     * Computes the distances for the rows from {@code startY} to {@code endY} (exclusive) of the given frame.
+     */
+    static ShadowDistance compute(PixelView foreground, FrameInfo frame, FrameSize size, int startY, int endY, int radius)
+    {
+        int w = size.width();
+        int h = size.height();
+        int rows = endY - startY;
+        // Opaque pixels further away than the radius are irrelevant, counters saturate at this value
+        int far = radius + 1;
+
+        // Opaque rows within the radius of the range
+        int firstRow = Math.max(0, startY - radius);
+        int lastRow = Math.min(h, endY + radius);
+        boolean[] opaque = new boolean[(lastRow - firstRow) * w];
+        int[] scratch = new int[w];
+        for (int y = firstRow; y < lastRow; y++)
+        {
+            foreground.readRow(frame.x(), frame.y() + y, w, scratch, 0);
+            int base = (y - firstRow) * w;
+            for (int x = 0; x < w; x++)
+            {
+                opaque[base + x] = (scratch[x] >>> 24) >= 128;
+            }
+        }
+
+        int[] high = new int[rows * w];
+        int[] low = new int[rows * w];
+
+        // Opaque pixel above, top to bottom
+        int[] column = new int[w];
+        Arrays.fill(column, far);
+        for (int y = firstRow; y < endY; y++)
+        {
+            int base = (y - firstRow) * w;
+            int out = (y - startY) * w;
+            for (int x = 0; x < w; x++)
+            {
+                if (y >= startY)
+                {
+                    high[out + x] = column[x];
+                }
+                column[x] = opaque[base + x] ? 1 : Math.min(column[x] + 1, far);
+            }
+        }
+
+        // Opaque pixel below, bottom to top
+        Arrays.fill(column, far);
+        for (int y = lastRow - 1; y >= startY; y--)
+        {
+            int base = (y - firstRow) * w;
+            int out = (y - startY) * w;
+            for (int x = 0; x < w; x++)
+            {
+                if (y < endY)
+                {
+                    low[out + x] = column[x];
+                }
+                column[x] = opaque[base + x] ? 1 : Math.min(column[x] + 1, far);
+            }
+        }
+
+        byte[] distances = new byte[rows * w];
+        for (int y = startY; y < endY; y++)
+        {
+            int base = (y - firstRow) * w;
+            int out = (y - startY) * w;
+
+            // Opaque pixel to the left, left to right
+            int run = far;
+            for (int x = 0; x < w; x++)
+            {
+                high[out + x] = Math.min(high[out + x], run);
+                run = opaque[base + x] ? 1 : Math.min(run + 1, far);
+            }
+
+            // Opaque pixel to the right, right to left
+            run = far;
+            for (int x = w - 1; x >= 0; x--)
+            {
+                low[out + x] = Math.min(low[out + x], run);
+                run = opaque[base + x] ? 1 : Math.min(run + 1, far);
+            }
+
+            for (int x = 0; x < w; x++)
+            {
+                int highDist = high[out + x];
+                int lowDist = low[out + x];
+                if (highDist < lowDist)
+                {
+                    distances[out + x] = (byte) highDist;
+                }
+                else if (lowDist < highDist)
+                {
+                    distances[out + x] = (byte) -lowDist;
+                }
+            }
+        }
+        return new ShadowDistance(startY, w, distances);
+    }
+
+    /**
+     * Returns the highlight distance as a positive value, the shadow distance as a negative value or 0 if the pixel
+     * is neither highlighted nor shadowed.
+     */
+    int get(int x, int y)
+    {
+        return distances[(y - startY) * width + x];
+    }
+}
@@ -5,6 +5,7 @@ import net.minecraft.client.resources.metadata.animation.FrameSize;
 import net.minecraft.util.FastColor;
 import xfacthd.oretexgen.client.loader.ShadowMetadata;
 import xfacthd.oretexgen.client.util.FrameInfo;
+import xfacthd.oretexgen.client.util.PixelView;
 
 public final class ShadowGenerator
 {
@@ -13,6 +14,27 @@ public final class ShadowGenerator
     private static final int[] HIGH_X = new int[] {-1,0};
     private static final int[] HIGH_Y = new int[] {0,-1};
 
+    /**
+     * Returns the distance to the nearest opaque pixel in one of the given directions or {@code radius + 1} if there
+     * is none within the radius.
+     */
+    private static int probeDistance(
+            NativeImage image, int x, int y, int[] dirX, int[] dirY, FrameInfo frame, FrameSize size, int radius
+    )
+    {
+        for (int distance = 1; distance <= radius; distance++)
+        {
+            for (int i = 0; i < dirX.length; i++)
+            {
+                if (safeCheckPixel(image, x + dirX[i] * distance, y + dirY[i] * distance, frame, size))
+                {
+                    return distance;
+                }
+            }
+        }
+        return radius + 1;
+    }
+
     private static boolean safeCheckPixel(NativeImage image, int x, int y, FrameInfo frame, FrameSize size)
     {
         if (x < 0 || x >= size.width() || y < 0 || y >= size.height())
@@ -26,63 +48,224 @@ public final class ShadowGenerator
         return FastColor.ARGB32.alpha(image.getPixelRGBA(px, py)) >= 128;
     }
 
-    public static void generateShadow(NativeImage outputImage, NativeImage foreground, NativeImage background, FrameInfo frame, FrameSize size, ShadowMetadata shadowMetadata)
+    public static void generateShadow(
+            NativeImage outputImage,
+            NativeImage foreground,
+            NativeImage background,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata
+    )
     {
-        Palette palette = new Palette(background, shadowMetadata.paletteExpansion());
+        generateShadow(outputImage, foreground, background, palette, frame, size, shadowMetadata, 0, size.height());
+    }
 
+    /**
+     * Generates the shadow for the rows from {@code startY} (inclusive) to {@code endY} (exclusive) of the given frame.
+     */
+    public static void generateShadow(
+            NativeImage outputImage,
+            NativeImage foreground,
+            NativeImage background,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY
+    )
+    {
+        generateShadow(outputImage, foreground, background, palette, frame, size, shadowMetadata, startY, endY, 1);
+    }
+
+    /**
+     * Generates the shadow for the given rows of the given frame from a foreground at a resolution lower by the given
+     * integer factor, the frame and rows are given in output coordinates.
+     */
+    public static void generateShadow(
+            NativeImage outputImage,
+            NativeImage foreground,
+            NativeImage background,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY,
+            int scale
+    )
+    {
         int w = size.width();
-        int h = size.height();
-        for (int y = 0; y < h; y++)
+        int radius = shadowMetadata.radius();
+        FrameInfo fgFrame = scaleDown(frame, scale);
+        FrameSize fgSize = new FrameSize(size.width() / scale, size.height() / scale);
+        for (int y = startY; y < endY; y++)
         {
             int py = frame.y() + y;
             for (int x = 0; x < w; x++)
             {
                 int px = frame.x() + x;
 
-                boolean high = false;
-                boolean low = false;
-
-                for (int i = 0; i < LOW_X.length; i++)
+                int lowDist = probeDistance(foreground, x / scale, y / scale, LOW_X, LOW_Y, fgFrame, fgSize, radius);
+                int highDist = probeDistance(foreground, x / scale, y / scale, HIGH_X, HIGH_Y, fgFrame, fgSize, radius);
+                if (highDist != lowDist)
                 {
-                    if (safeCheckPixel(foreground, x + LOW_X[i], y + LOW_Y[i], frame, size))
-                    {
-                        low = true;
-                        break;
-                    }
+                    boolean high = highDist < lowDist;
+                    int oldColor = background.getPixelRGBA(x, y);
+                    int distance = Math.min(highDist, lowDist);
+                    outputImage.setPixelRGBA(px, py, shade(oldColor, high, distance, palette, shadowMetadata));
                 }
-                for (int i = 0; i < HIGH_X.length; i++)
-                {
-                    if (safeCheckPixel(foreground, x + HIGH_X[i], y + HIGH_Y[i], frame, size))
-                    {
-                        high = true;
-                        break;
-                    }
-                }
-                if (high && low)
+            }
+        }
+    }
+
+    /**
+     * Row-based variant of the per-pixel shadow generation on {@link NativeImage}s, produces the same result.
+     */
+    public static void generateShadow(
+            PixelView output,
+            PixelView foreground,
+            PixelView background,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY
+    )
+    {
+        ShadeTable shadeTable = palette.getShadeTable(shadowMetadata);
+        if (shadowMetadata.radius() > 1)
+        {
+            generateWideShadow(output, foreground, background, shadeTable, frame, size, shadowMetadata, startY, endY);
+            return;
+        }
+
+        EdgeMask mask = EdgeMask.compute(foreground, frame, size, startY, endY);
+        int words = mask.words();
+        int fx = frame.x();
+        int fy = frame.y();
+
+        for (int y = startY; y < endY; y++)
+        {
+            for (int word = 0; word < words; word++)
+            {
+                long high = mask.highlight(y, word);
+                long edges = high | mask.shadow(y, word);
+                while (edges != 0L)
                 {
-                    high = false;
-                    low = false;
+                    int bit = Long.numberOfTrailingZeros(edges);
+                    edges &= edges - 1L;
+
+                    int x = (word << 6) + bit;
+                    int oldColor = background.get(x, y);
+                    boolean highlight = (high & (1L << bit)) != 0L;
+                    output.set(fx + x, fy + y, shadeTable.shade(oldColor, highlight));
                 }
+            }
+        }
+    }
+
+    /**
+     * Prepares the shadow decisions for the rows from {@code startY} to {@code endY} (exclusive) of the given frame.
+     */
+    public static ShadowRows prepareRows(
+            PixelView foreground,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY
+    )
+    {
+        return prepareRows(foreground, palette, frame, size, shadowMetadata, startY, endY, 1);
+    }
+
+    /**
+     * Prepares the shadow decisions for the given rows of the given frame from a foreground at a resolution lower by
+     * the given integer factor, the frame and rows are given in background coordinates.
+     */
+    public static ShadowRows prepareRows(
+            PixelView foreground,
+            Palette palette,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY,
+            int scale
+    )
+    {
+        ShadeTable shadeTable = palette.getShadeTable(shadowMetadata);
+        FrameInfo fgFrame = scaleDown(frame, scale);
+        FrameSize fgSize = new FrameSize(size.width() / scale, size.height() / scale);
+        int fgStartY = startY / scale;
+        int fgEndY = (endY + scale - 1) / scale;
+        if (shadowMetadata.radius() > 1)
+        {
+            return new ShadowRows(
+                    shadeTable, ShadowDistance.compute(foreground, fgFrame, fgSize, fgStartY, fgEndY, shadowMetadata.radius()), scale
+            );
+        }
+        return new ShadowRows(shadeTable, EdgeMask.compute(foreground, fgFrame, fgSize, fgStartY, fgEndY), scale);
+    }
+
+    private static FrameInfo scaleDown(FrameInfo frame, int scale)
+    {
+        if (scale == 1)
+        {
+            return frame;
+        }
+        return new FrameInfo(frame.index(), frame.x() / scale, frame.y() / scale);
+    }
 
-                if (high || low)
+    private static void generateWideShadow(
+            PixelView output,
+            PixelView foreground,
+            PixelView background,
+            ShadeTable shadeTable,
+            FrameInfo frame,
+            FrameSize size,
+            ShadowMetadata shadowMetadata,
+            int startY,
+            int endY
+    )
+    {
+        ShadowDistance distances = ShadowDistance.compute(foreground, frame, size, startY, endY, shadowMetadata.radius());
+        int w = size.width();
+        int fx = frame.x();
+        int fy = frame.y();
+
+        for (int y = startY; y < endY; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                int distance = distances.get(x, y);
+                if (distance != 0)
                 {
-                    int oldColor = background.getPixelRGBA(px, py);
-                    int index = palette.getIndex(oldColor);
-                    index = (int) ((index + palette.average * shadowMetadata.uniformity()) / (1 + shadowMetadata.uniformity()));
-
-                    if (high)
-                    {
-                        index += shadowMetadata.highlightStrength();
-                    }
-                    else
-                    {
-                        index -= shadowMetadata.shadowStrength();
-                    }
-
-                    int newColor = palette.getColor(index) | (oldColor & 0xFF000000);
-                    outputImage.setPixelRGBA(px, py, newColor);
+                    int oldColor = background.get(x, y);
+                    output.set(fx + x, fy + y, shadeTable.shade(oldColor, distance > 0, Math.abs(distance)));
                 }
             }
         }
     }
+
+    private static int shade(int oldColor, boolean high, int distance, Palette palette, ShadowMetadata shadowMetadata)
+    {
+        int index = palette.getIndex(oldColor);
+        index = (int) ((index + palette.average * shadowMetadata.uniformity()) / (1 + shadowMetadata.uniformity()));
+
+        if (high)
+        {
+            index += shadowMetadata.strengthAt(shadowMetadata.highlightStrength(), distance);
+        }
+        else
+        {
+            index -= shadowMetadata.strengthAt(shadowMetadata.shadowStrength(), distance);
+        }
+
+        return palette.getColor(index) | (oldColor & 0xFF000000);
+    }
 }
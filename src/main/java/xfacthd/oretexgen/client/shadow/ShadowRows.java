@@ -0,0 +1,74 @@
+package xfacthd.oretexgen.client.shadow;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Shadow decisions of a range of rows of an ore frame, prepared up front such that a row-wise kernel can shade each
+ * background row right before blending onto it.
+ */
+public final class ShadowRows
+{
+    private final ShadeTable shadeTable;
+    @Nullable
+    private final EdgeMask mask;
+    @Nullable
+    private final ShadowDistance distances;
+    private final int scale;
+
+    ShadowRows(ShadeTable shadeTable, EdgeMask mask, int scale)
+    {
+        this.shadeTable = shadeTable;
+        this.mask = mask;
+        this.distances = null;
+        this.scale = scale;
+    }
+
+    ShadowRows(ShadeTable shadeTable, ShadowDistance distances, int scale)
+    {
+        this.shadeTable = shadeTable;
+        this.mask = null;
+        this.distances = distances;
+        this.scale = scale;
+    }
+
+    /**
+     * Shades the highlighted and shadowed pixels of the background row {@code y} in place, {@code row} holds the
+     * background pixels of the whole frame width.
+     */
+    public void shade(int y, int[] row)
+    {
+        int maskY = y / scale;
+        if (mask != null)
+        {
+            int words = mask.words();
+            for (int word = 0; word < words; word++)
+            {
+                long high = mask.highlight(maskY, word);
+                long edges = high | mask.shadow(maskY, word);
+                while (edges != 0L)
+                {
+                    int bit = Long.numberOfTrailingZeros(edges);
+                    edges &= edges - 1L;
+
+                    boolean highlight = (high & (1L << bit)) != 0L;
+                    int startX = ((word << 6) + bit) * scale;
+                    for (int x = startX; x < startX + scale; x++)
+                    {
+                        row[x] = shadeTable.shade(row[x], highlight);
+                    }
+                }
+            }
+        }
+        else if (distances != null)
+        {
+            for (int x = 0; x < row.length; x++)
+            {
+                int distance = distances.get(x / scale, maskY);
+                if (distance != 0)
+                {
+                    row[x] = shadeTable.shade(row[x], distance > 0, Math.abs(distance));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package xfacthd.oretexgen.client.util;
+
+import net.minecraft.client.resources.metadata.animation.AnimationMetadataSection;
+import net.minecraft.client.resources.metadata.animation.FrameSize;
+import net.minecraft.server.packs.resources.Resource;
+import org.jetbrains.annotations.Nullable;
+import xfacthd.oretexgen.client.loader.ShadowMetadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Builds a SHA-256 hash over the inputs of a generated texture.
+ */
+public final class ContentHash
+{
+    private final MessageDigest digest;
+    private final byte[] scratch = new byte[8192];
+
+    public ContentHash()
+    {
+        try
+        {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public ContentHash putInt(int value)
+    {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+        return this;
+    }
+
+    public ContentHash putBoolean(boolean value)
+    {
+        digest.update((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    public ContentHash putString(String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    public ContentHash putBytes(byte[] bytes)
+    {
+        putInt(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    /**
+     * Hashes the raw bytes of the given resource.
+     */
+    public ContentHash putResource(Resource resource) throws IOException
+    {
+        try (InputStream stream = resource.open())
+        {
+            int read;
+            while ((read = stream.read(scratch)) != -1)
+            {
+                digest.update(scratch, 0, read);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Hashes all values of the given animation which influence the generated texture.
+     */
+    public ContentHash putAnimation(AnimationMetadataSection animation)
+    {
+        // Passing -1 yields the explicitly specified frame size or -1 for unspecified dimensions
+        FrameSize size = animation.calculateFrameSize(-1, -1);
+        putInt(size.width());
+        putInt(size.height());
+        putInt(animation.getDefaultFrameTime());
+        putBoolean(animation.isInterpolatedFrames());
+        animation.forEachFrame((idx, time) ->
+        {
+            putInt(idx);
+            putInt(time);
+        });
+        return this;
+    }
+
+    public ContentHash putShadow(@Nullable ShadowMetadata shadow)
+    {
+        putBoolean(shadow != null);
+        if (shadow != null)
+        {
+            putInt(shadow.paletteExpansion());
+            putInt(shadow.highlightStrength());
+            putInt(shadow.shadowStrength());
+            putInt(Float.floatToIntBits(shadow.uniformity()));
+            putInt(shadow.radius());
+            putInt(Float.floatToIntBits(shadow.falloff()));
+        }
+        return this;
+    }
+
+    /**
+     * Completes the hash and returns it as a lowercase hex string. The builder must not be used afterwards.
+     */
+    public String build()
+    {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,286 @@
+package xfacthd.oretexgen.client.util;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Row-based access to the pixels of an RGBA {@link NativeImage} in the format of {@link NativeImage#getPixelRGBA},
+ * operating directly on the image's native memory. Views can be {@linkplain #scaled(int) scaled} by an integer factor.
+ */
+public final class PixelView
+{
+    private final NativeImage image;
+    private final long pointer;
+    private final int stride;
+    private final int scale;
+    private final int width;
+    private final int height;
+
+    private PixelView(NativeImage image, long pointer, int scale)
+    {
+        this.image = image;
+        this.pointer = pointer;
+        this.stride = image.getWidth();
+        this.scale = scale;
+        this.width = image.getWidth() * scale;
+        this.height = image.getHeight() * scale;
+    }
+
+    /**
+     * Creates a view of the given image which operates on native memory, it must not outlive the image.
+     */
+    public static PixelView of(NativeImage image)
+    {
+        if (image.format() != NativeImage.Format.RGBA)
+        {
+            throw new IllegalArgumentException("PixelView only supports RGBA images");
+        }
+
+        long pointer = image.pixels;
+        if (pointer == 0L)
+        {
+            throw new IllegalStateException("Image is not allocated");
+        }
+        return new PixelView(image, pointer, 1);
+    }
+
+    /**
+     * Creates a view of the given image which always uses the per-pixel methods of {@link NativeImage}.
+     */
+    public static PixelView reference(NativeImage image)
+    {
+        if (image.format() != NativeImage.Format.RGBA)
+        {
+            throw new IllegalArgumentException("PixelView only supports RGBA images");
+        }
+        return new PixelView(image, 0L, 1);
+    }
+
+    /**
+     * Returns a read-only view of the same image which appears {@code factor} times larger in both dimensions.
+     */
+    public PixelView scaled(int factor)
+    {
+        if (factor < 1)
+        {
+            throw new IllegalArgumentException("Scale factor must be positive");
+        }
+        if (factor == 1)
+        {
+            return this;
+        }
+        return new PixelView(image, pointer, scale * factor);
+    }
+
+    public int width()
+    {
+        return width;
+    }
+
+    public int height()
+    {
+        return height;
+    }
+
+    public int scale()
+    {
+        return scale;
+    }
+
+    public boolean isNative()
+    {
+        return pointer != 0L;
+    }
+
+    public int get(int x, int y)
+    {
+        Objects.checkIndex(x, width);
+        Objects.checkIndex(y, height);
+        if (pointer != 0L)
+        {
+            return MemoryUtil.memGetInt(address(x / scale, y / scale));
+        }
+        return image.getPixelRGBA(x / scale, y / scale);
+    }
+
+    public void set(int x, int y, int rgba)
+    {
+        checkWritable();
+        if (pointer != 0L)
+        {
+            Objects.checkIndex(x, width);
+            Objects.checkIndex(y, height);
+            MemoryUtil.memPutInt(address(x, y), rgba);
+        }
+        else
+        {
+            image.setPixelRGBA(x, y, rgba);
+        }
+    }
+
+    /**
+     * Reads {@code length} pixels of row {@code y}, starting at {@code x}, into {@code dest} at {@code offset}.
+     */
+    public void readRow(int x, int y, int length, int[] dest, int offset)
+    {
+        checkRow(x, y, length);
+        Objects.checkFromIndexSize(offset, length, dest.length);
+        if (scale != 1)
+        {
+            readScaledRow(x, y, length, dest, offset);
+        }
+        else if (pointer != 0L)
+        {
+            long addr = address(x, y);
+            for (int i = 0; i < length; i++)
+            {
+                dest[offset + i] = MemoryUtil.memGetInt(addr + ((long) i << 2));
+            }
+        }
+        else
+        {
+            for (int i = 0; i < length; i++)
+            {
+                dest[offset + i] = image.getPixelRGBA(x + i, y);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code length} pixels from {@code src} at {@code offset} to row {@code y}, starting at {@code x}.
+     */
+    public void writeRow(int x, int y, int length, int[] src, int offset)
+    {
+        checkWritable();
+        checkRow(x, y, length);
+        Objects.checkFromIndexSize(offset, length, src.length);
+        if (pointer != 0L)
+        {
+            long addr = address(x, y);
+            for (int i = 0; i < length; i++)
+            {
+                MemoryUtil.memPutInt(addr + ((long) i << 2), src[offset + i]);
+            }
+        }
+        else
+        {
+            for (int i = 0; i < length; i++)
+            {
+                image.setPixelRGBA(x + i, y, src[offset + i]);
+            }
+        }
+    }
+
+    /**
+     * Copies a {@code width} x {@code height} rectangle from {@code src} to {@code dest} without blending.
+     */
+    public static void copyRect(PixelView src, int srcX, int srcY, PixelView dest, int destX, int destY, int width, int height)
+    {
+        dest.checkWritable();
+        if (src.pointer != 0L && dest.pointer != 0L && src.scale == 1)
+        {
+            long rowBytes = (long) width << 2;
+            for (int y = 0; y < height; y++)
+            {
+                src.checkRow(srcX, srcY + y, width);
+                dest.checkRow(destX, destY + y, width);
+                MemoryUtil.memCopy(src.address(srcX, srcY + y), dest.address(destX, destY + y), rowBytes);
+            }
+            return;
+        }
+
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            src.readRow(srcX, srcY + y, width, row, 0);
+            dest.writeRow(destX, destY + y, width, row, 0);
+        }
+    }
+
+    /**
+     * Copies all pixels of the view into a native memory block at the given address.
+     */
+    public void copyTo(long address)
+    {
+        if (scale != 1)
+        {
+            throw new IllegalStateException("Scaled views cannot be copied to native memory");
+        }
+        if (pointer != 0L)
+        {
+            MemoryUtil.memCopy(pointer, address, (long) width * height * 4L);
+            return;
+        }
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                MemoryUtil.memPutInt(address + (((long) y * width + x) << 2), image.getPixelRGBA(x, y));
+            }
+        }
+    }
+
+    /**
+     * Fills all pixels of the view from a native memory block at the given address.
+     */
+    public void copyFrom(long address)
+    {
+        checkWritable();
+        if (pointer != 0L)
+        {
+            MemoryUtil.memCopy(address, pointer, (long) width * height * 4L);
+            return;
+        }
+
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                image.setPixelRGBA(x, y, MemoryUtil.memGetInt(address + (((long) y * width + x) << 2)));
+            }
+        }
+    }
+
+    private void readScaledRow(int x, int y, int length, int[] dest, int offset)
+    {
+        int srcX = x / scale;
+        int srcY = y / scale;
+        int remaining = scale - (x % scale);
+        int i = 0;
+        while (i < length)
+        {
+            int color = pointer != 0L ? MemoryUtil.memGetInt(address(srcX, srcY)) : image.getPixelRGBA(srcX, srcY);
+            int end = Math.min(length, i + remaining);
+            Arrays.fill(dest, offset + i, offset + end, color);
+            i = end;
+            srcX++;
+            remaining = scale;
+        }
+    }
+
+    private void checkWritable()
+    {
+        if (scale != 1)
+        {
+            throw new IllegalStateException("Scaled views are read-only");
+        }
+    }
+
+    private void checkRow(int x, int y, int length)
+    {
+        Objects.checkIndex(y, height);
+        Objects.checkFromIndexSize(x, length, width);
+    }
+
+    /**
+     * Returns the address of the given pixel in unscaled image coordinates.
+     */
+    private long address(int x, int y)
+    {
+        return pointer + (((long) y * stride + x) << 2);
+    }
+}
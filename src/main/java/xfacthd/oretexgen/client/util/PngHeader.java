@@ -0,0 +1,49 @@
+package xfacthd.oretexgen.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Dimensions of a PNG image, read from the {@code IHDR} chunk directly following the file signature.
+ */
+public record PngHeader(int width, int height)
+{
+    private static final byte[] SIGNATURE = new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int IHDR_LENGTH = 13;
+    private static final int IHDR_TYPE = ('I' << 24) | ('H' << 16) | ('D' << 8) | 'R';
+    private static final int HEADER_SIZE = SIGNATURE.length + 16;
+
+    /**
+     * Reads the header from the start of the given stream, returns an empty optional if the stream doesn't start with
+     * a valid PNG signature and {@code IHDR} chunk. The stream is not closed.
+     */
+    public static Optional<PngHeader> read(InputStream stream) throws IOException
+    {
+        byte[] header = stream.readNBytes(HEADER_SIZE);
+        if (header.length < HEADER_SIZE || !Arrays.equals(header, 0, SIGNATURE.length, SIGNATURE, 0, SIGNATURE.length))
+        {
+            return Optional.empty();
+        }
+
+        int offset = SIGNATURE.length;
+        if (readInt(header, offset) != IHDR_LENGTH || readInt(header, offset + 4) != IHDR_TYPE)
+        {
+            return Optional.empty();
+        }
+
+        int width = readInt(header, offset + 8);
+        int height = readInt(header, offset + 12);
+        if (width <= 0 || height <= 0)
+        {
+            return Optional.empty();
+        }
+        return Optional.of(new PngHeader(width, height));
+    }
+
+    private static int readInt(byte[] data, int offset)
+    {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+}
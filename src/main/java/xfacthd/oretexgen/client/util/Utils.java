@@ -25,16 +25,46 @@ public final class Utils
             return source;
         }
 
-        NativeImage scaled = new NativeImage(source.format(), source.getWidth() * scale, source.getHeight() * scale, false);
-        scaled.resizeSubRectTo(0, 0, source.getWidth(), source.getHeight(), source);
+        NativeImage scaled = copyScaled(source, scale);
         source.close();
         return scaled;
     }
 
+    /**
+     * Returns an unscaled copy of the given image, the source image is left untouched.
+     */
+    public static NativeImage copy(NativeImage source)
+    {
+        NativeImage copy = new NativeImage(source.format(), source.getWidth(), source.getHeight(), false);
+        copy.copyFrom(source);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the given image scaled by the given factor with nearest-neighbor filtering, the source image
+     * is left untouched. The copy matches a {@linkplain PixelView#scaled(int) scaled view} of the source.
+     */
+    public static NativeImage copyScaled(NativeImage source, int scale)
+    {
+        int width = source.getWidth() * scale;
+        int height = source.getHeight() * scale;
+        NativeImage scaled = new NativeImage(source.format(), width, height, false);
+        PixelView.copyRect(PixelView.of(source).scaled(scale), 0, 0, PixelView.of(scaled), 0, 0, width, height);
+        return scaled;
+    }
+
     public static List<FrameInfo> collectFrames(NativeImage image, FrameSize size, AnimationMetadataSection animation)
+    {
+        return collectFrames(image.getWidth(), image.getHeight(), size, animation);
+    }
+
+    /**
+     * Collects the frames of an image of the given dimensions, used for images which are only scaled virtually.
+     */
+    public static List<FrameInfo> collectFrames(int imageWidth, int imageHeight, FrameSize size, AnimationMetadataSection animation)
     {
         List<FrameInfo> frames = new ArrayList<>();
-        int rowCount = image.getWidth() / size.width();
+        int rowCount = imageWidth / size.width();
         animation.forEachFrame((idx, time) ->
         {
             int frameX = (idx % rowCount) * size.width();
@@ -43,7 +73,7 @@ public final class Utils
         });
         if (frames.isEmpty())
         {
-            int frameCount = rowCount * (image.getHeight() / size.height());
+            int frameCount = rowCount * (imageHeight / size.height());
             for (int idx = 0; idx < frameCount; idx++)
             {
                 int frameX = (idx % rowCount) * size.width();
@@ -56,9 +86,9 @@ public final class Utils
 
     public static void copyRect(NativeImage src, NativeImage dest, int srcX, int srcY, int destX, int destY, int width, int height)
     {
-        for (int y = 0; y < width; y++)
+        for (int y = 0; y < height; y++)
         {
-            for (int x = 0; x < height; x++)
+            for (int x = 0; x < width; x++)
             {
                 int rgba = src.getPixelRGBA(srcX + x, srcY + y);
                 int alpha = FastColor.ARGB32.alpha(rgba);
@@ -74,6 +104,86 @@ public final class Utils
         }
     }
 
+    /**
+     * Blends a {@code width} x {@code height} rectangle of {@code src} onto {@code dest}. Produces the same result as
+     * {@link #copyRect(NativeImage, NativeImage, int, int, int, int, int, int)}.
+     */
+    public static void blendRect(PixelView src, PixelView dest, int srcX, int srcY, int destX, int destY, int width, int height)
+    {
+        int[] srcRow = new int[width];
+        int[] destRow = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            src.readRow(srcX, srcY + y, width, srcRow, 0);
+            dest.readRow(destX, destY + y, width, destRow, 0);
+            blendRow(srcRow, destRow, width);
+            dest.writeRow(destX, destY + y, width, destRow, 0);
+        }
+    }
+
+    /**
+     * Blends the first {@code length} pixels of {@code src} onto {@code dest}.
+     */
+    public static void blendRow(int[] src, int[] dest, int length)
+    {
+        if (VectorSupport.ENABLED)
+        {
+            VectorSupport.KERNELS.blendRow(src, dest, length);
+        }
+        else
+        {
+            blendRowScalar(src, dest, 0, length);
+        }
+    }
+
+    /**
+     * Blends the pixels from {@code from} (inclusive) to {@code to} (exclusive) of {@code src} onto {@code dest}.
+     */
+    static void blendRowScalar(int[] src, int[] dest, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+        {
+            int rgba = src[i];
+            int alpha = rgba >>> 24;
+            if (alpha == 255)
+            {
+                dest[i] = rgba;
+            }
+            else if (alpha > 0)
+            {
+                dest[i] = blendPixel(dest[i], rgba);
+            }
+        }
+    }
+
+    /**
+     * Blends {@code color} onto {@code base}, replicates {@link NativeImage#blendPixel(int, int, int)} bit for bit.
+     */
+    public static int blendPixel(int base, int color)
+    {
+        float srcA = (float) (color >>> 24) / 255.0F;
+        float srcB = (float) (color >> 16 & 0xFF) / 255.0F;
+        float srcG = (float) (color >> 8 & 0xFF) / 255.0F;
+        float srcR = (float) (color & 0xFF) / 255.0F;
+        float baseA = (float) (base >>> 24) / 255.0F;
+        float baseB = (float) (base >> 16 & 0xFF) / 255.0F;
+        float baseG = (float) (base >> 8 & 0xFF) / 255.0F;
+        float baseR = (float) (base & 0xFF) / 255.0F;
+        float invA = 1.0F - srcA;
+        float a = srcA * srcA + baseA * invA;
+        float b = srcB * srcA + baseB * invA;
+        float g = srcG * srcA + baseG * invA;
+        float r = srcR * srcA + baseR * invA;
+        if (a > 1.0F) a = 1.0F;
+        if (b > 1.0F) b = 1.0F;
+        if (g > 1.0F) g = 1.0F;
+        if (r > 1.0F) r = 1.0F;
+        return ((int) (a * 255.0F) & 0xFF) << 24 |
+               ((int) (b * 255.0F) & 0xFF) << 16 |
+               ((int) (g * 255.0F) & 0xFF) << 8 |
+               ((int) (r * 255.0F) & 0xFF);
+    }
+
     public static <T> MapCodec<T> optionalFieldCodecOf(Codec<T> elementCodec, String key, T defaultValue)
     {
         return optionalFieldCodecOf(elementCodec, key).xmap(
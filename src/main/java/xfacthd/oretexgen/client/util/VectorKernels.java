@@ -0,0 +1,21 @@
+package xfacthd.oretexgen.client.util;
+
+/**
+ * Data-parallel kernels implemented with the incubating Vector API, available through {@link VectorSupport#KERNELS}.
+ * Each kernel produces exactly the same result as its scalar counterpart.
+ */
+public interface VectorKernels
+{
+    int lanes();
+
+    /**
+     * Blends the first {@code length} pixels of {@code src} onto {@code dest} like {@link Utils#blendRow}.
+     */
+    void blendRow(int[] src, int[] dest, int length);
+
+    /**
+     * Sets bit {@code x} of the bitset starting at {@code dest[offset]} for every pixel of the first {@code length}
+     * pixels of {@code row} with an alpha of at least 128. Bits of transparent pixels are left untouched.
+     */
+    void opaqueBits(int[] row, int length, long[] dest, int offset);
+}
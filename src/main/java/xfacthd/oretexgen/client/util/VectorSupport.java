@@ -0,0 +1,58 @@
+package xfacthd.oretexgen.client.util;
+
+import xfacthd.oretexgen.OreTextureGenerator;
+import xfacthd.oretexgen.client.OTGConfig;
+
+/**
+ * Loads the {@link VectorKernels} if they are enabled with {@link OTGConfig#VECTOR_KERNELS} and the
+ * {@code jdk.incubator.vector} module is available.
+ */
+public final class VectorSupport
+{
+    private static final String MODULE = "jdk.incubator.vector";
+    private static final String IMPL_CLASS = "xfacthd.oretexgen.client.util.VectorKernelsImpl";
+    private static final int MIN_LANES = 4;
+
+    /** The vector kernels or {@code null} if they are disabled or unavailable. */
+    public static final VectorKernels KERNELS = load();
+    public static final boolean ENABLED = KERNELS != null;
+
+    private static VectorKernels load()
+    {
+        if (!OTGConfig.VECTOR_KERNELS)
+        {
+            return null;
+        }
+
+        if (ModuleLayer.boot().findModule(MODULE).isEmpty())
+        {
+            OreTextureGenerator.LOGGER.warn(
+                    "Vector kernels are enabled but the module '{}' is not available, add '--add-modules {}' to the JVM arguments",
+                    MODULE, MODULE
+            );
+            return null;
+        }
+
+        try
+        {
+            VectorKernels kernels = (VectorKernels) Class.forName(IMPL_CLASS).getDeclaredConstructor().newInstance();
+            int lanes = kernels.lanes();
+            if (lanes < MIN_LANES)
+            {
+                OreTextureGenerator.LOGGER.info("Vector kernels disabled, only {} int lanes are supported by this CPU", lanes);
+                return null;
+            }
+            OreTextureGenerator.LOGGER.info("Using vector kernels with {} int lanes", lanes);
+            return kernels;
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            OreTextureGenerator.LOGGER.warn("Vector kernels are enabled but the Vector API is not accessible", e);
+            return null;
+        }
+    }
+
+
+
+    private VectorSupport() { }
+}
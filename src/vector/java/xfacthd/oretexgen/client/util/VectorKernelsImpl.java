@@ -0,0 +1,120 @@
+package xfacthd.oretexgen.client.util;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Implementation of the {@link VectorKernels} with the incubating Vector API. Compiled separately from the main
+ * sources and only loaded by {@link VectorSupport} if the kernels are enabled.
+ */
+final class VectorKernelsImpl implements VectorKernels
+{
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOAT_SPECIES = VectorSpecies.of(float.class, INT_SPECIES.vectorShape());
+    private static final int LANES = INT_SPECIES.length();
+
+    @Override
+    public int lanes()
+    {
+        return LANES;
+    }
+
+    @Override
+    public void blendRow(int[] src, int[] dest, int length)
+    {
+        int bound = INT_SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES)
+        {
+            IntVector color = IntVector.fromArray(INT_SPECIES, src, i);
+            IntVector srcAlpha = color.lanewise(VectorOperators.LSHR, 24);
+            VectorMask<Integer> transparent = srcAlpha.eq(0);
+            if (transparent.allTrue())
+            {
+                continue;
+            }
+
+            VectorMask<Integer> opaque = srcAlpha.eq(255);
+            if (opaque.allTrue())
+            {
+                color.intoArray(dest, i);
+                continue;
+            }
+
+            IntVector base = IntVector.fromArray(INT_SPECIES, dest, i);
+            blend(base, color, srcAlpha)
+                    .blend(color, opaque)
+                    .blend(base, transparent)
+                    .intoArray(dest, i);
+        }
+        Utils.blendRowScalar(src, dest, i, length);
+    }
+
+    @Override
+    public void opaqueBits(int[] row, int length, long[] dest, int offset)
+    {
+        // The lane count is a power of two of at most 16, lane groups therefore never straddle two words
+        int bound = INT_SPECIES.loopBound(length);
+        int x = 0;
+        for (; x < bound; x += LANES)
+        {
+            long bits = IntVector.fromArray(INT_SPECIES, row, x)
+                    .lanewise(VectorOperators.LSHR, 24)
+                    .compare(VectorOperators.GE, 128)
+                    .toLong();
+            dest[offset + (x >>> 6)] |= bits << (x & 63);
+        }
+        for (; x < length; x++)
+        {
+            if ((row[x] >>> 24) >= 128)
+            {
+                dest[offset + (x >>> 6)] |= 1L << x;
+            }
+        }
+    }
+
+    /**
+     * Lane-wise port of {@link Utils#blendPixel(int, int)}, the float operations are performed in the same order to
+     * produce identical rounding.
+     */
+    private static IntVector blend(IntVector base, IntVector color, IntVector srcAlpha)
+    {
+        FloatVector srcA = toUnitFloat(srcAlpha);
+        FloatVector srcB = toUnitFloat(channel(color, 16));
+        FloatVector srcG = toUnitFloat(channel(color, 8));
+        FloatVector srcR = toUnitFloat(channel(color, 0));
+        FloatVector baseA = toUnitFloat(base.lanewise(VectorOperators.LSHR, 24));
+        FloatVector baseB = toUnitFloat(channel(base, 16));
+        FloatVector baseG = toUnitFloat(channel(base, 8));
+        FloatVector baseR = toUnitFloat(channel(base, 0));
+        FloatVector invA = FloatVector.broadcast(FLOAT_SPECIES, 1.0F).sub(srcA);
+
+        IntVector a = toByte(srcA.mul(srcA).add(baseA.mul(invA)));
+        IntVector b = toByte(srcB.mul(srcA).add(baseB.mul(invA)));
+        IntVector g = toByte(srcG.mul(srcA).add(baseG.mul(invA)));
+        IntVector r = toByte(srcR.mul(srcA).add(baseR.mul(invA)));
+        return a.lanewise(VectorOperators.LSHL, 24)
+                .or(b.lanewise(VectorOperators.LSHL, 16))
+                .or(g.lanewise(VectorOperators.LSHL, 8))
+                .or(r);
+    }
+
+    private static IntVector channel(IntVector pixels, int shift)
+    {
+        return pixels.lanewise(VectorOperators.ASHR, shift).and(0xFF);
+    }
+
+    private static FloatVector toUnitFloat(IntVector channel)
+    {
+        return ((FloatVector) channel.convertShape(VectorOperators.I2F, FLOAT_SPECIES, 0)).div(255.0F);
+    }
+
+    private static IntVector toByte(FloatVector value)
+    {
+        FloatVector clamped = value.min(1.0F).mul(255.0F);
+        return ((IntVector) clamped.convertShape(VectorOperators.F2I, INT_SPECIES, 0)).and(0xFF);
+    }
+
+
+
+    VectorKernelsImpl() { }
+}